@@ -0,0 +1,55 @@
+package wave.app;
+
+import java.util.Random;
+
+// Scene layouts shared by the benchmarks. "sample" is the startup layout from
+// SampleScene; "rooms-N" is a lattice of rooms with N walls that grows with the
+// wall count the way an imported floor plan does, rather than getting denser.
+final class BenchmarkScenes {
+    static final double ROOM = 100.0;
+
+    private BenchmarkScenes() {
+    }
+
+    // Builds the layout plus enough extra sources to reach the requested count
+    static WaveEngine build(String layout, int sources) {
+        WaveEngine engine = new WaveEngine();
+        double extent;
+        if (layout.equals("sample")) {
+            SampleScene.build(engine);
+            extent = 0;
+        } else if (layout.startsWith("rooms-")) {
+            extent = rooms(engine, Integer.parseInt(layout.substring("rooms-".length())));
+        } else {
+            throw new IllegalArgumentException("Unknown layout: " + layout);
+        }
+
+        Random random = new Random(7);
+        while (engine.getSources().size() < sources) {
+            if (extent == 0) {
+                engine.addSource(100 + random.nextDouble() * 600, 100 + random.nextDouble() * 400);
+            } else {
+                engine.addSource(random.nextDouble() * extent, random.nextDouble() * extent);
+            }
+        }
+        return engine;
+    }
+
+    // Rooms on a square lattice with a doorway in every wall; returns the extent
+    static double rooms(WaveEngine engine, int wallCount) {
+        int side = (int) Math.ceil(Math.sqrt(wallCount / 2.0));
+        WallType[] types = WallType.values();
+        int walls = 0;
+        for (int row = 0; row < side && walls < wallCount; row++) {
+            for (int col = 0; col < side && walls < wallCount; col++) {
+                double x = col * ROOM;
+                double y = row * ROOM;
+                engine.addWall(x, y, x + ROOM * 0.7, y, types[walls++ % types.length]);
+                if (walls < wallCount) {
+                    engine.addWall(x, y, x, y + ROOM * 0.7, types[walls++ % types.length]);
+                }
+            }
+        }
+        return side * ROOM;
+    }
+}
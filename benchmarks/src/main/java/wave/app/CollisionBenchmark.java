@@ -0,0 +1,93 @@
+package wave.app;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost of a single front's collision query: one step segment against all
+// walls, through the WallGrid versus testing every wall in turn. The grid runs
+// with the SIMD kernel (the fork enables the Vector API) or the scalar one.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@OperationsPerInvocation(CollisionBenchmark.SEGMENTS)
+public class CollisionBenchmark {
+    static final int SEGMENTS = 4096;
+    private static final double STEP = 2.0;
+
+    @Param({ "sample", "rooms-100", "rooms-1000", "rooms-10000" })
+    public String layout;
+
+    @Param({ "default", "scalar" })
+    public String kernel;
+
+    private List<Wall> walls;
+    private WallGrid grid;
+    private final WallGrid.Hit hit = new WallGrid.Hit();
+    private final double[] segments = new double[SEGMENTS * 4];
+
+    @Setup
+    public void setUp() {
+        WaveEngine engine = BenchmarkScenes.build(layout, 0);
+        walls = engine.getWalls();
+        grid = new WallGrid(40, kernel.equals("scalar") ? SegmentKernel.SCALAR : SegmentKernel.DEFAULT);
+        double extent = 0;
+        for (Wall wall : walls) {
+            grid.add(wall);
+            extent = Math.max(extent, Math.max(Math.max(wall.x1, wall.x2), Math.max(wall.y1, wall.y2)));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < SEGMENTS; i++) {
+            double x = random.nextDouble() * extent;
+            double y = random.nextDouble() * extent;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            segments[i * 4] = x;
+            segments[i * 4 + 1] = y;
+            segments[i * 4 + 2] = x + Math.cos(angle) * STEP;
+            segments[i * 4 + 3] = y + Math.sin(angle) * STEP;
+        }
+    }
+
+    @Benchmark
+    public int grid() {
+        double[] s = segments;
+        int hits = 0;
+        for (int i = 0; i < s.length; i += 4) {
+            if (grid.firstHit(s[i], s[i + 1], s[i + 2], s[i + 3], hit)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int linear() {
+        double[] s = segments;
+        int hits = 0;
+        for (int i = 0; i < s.length; i += 4) {
+            for (int w = 0, n = walls.size(); w < n; w++) {
+                if (WallGrid.intersect(s[i], s[i + 1], s[i + 2], s[i + 3], walls.get(w)) >= 0) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,112 @@
+package wave.app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cold start of the app: every invocation launches a fresh process and times
+// it up to the line that marks it as started, the UI's first drawn frame or,
+// for the headless app, HeadlessMain's report after one step. Launched from
+//   image         the jlink runtime image (mvn -Pimage package in ../demo),
+//                 with the class-data-sharing archive of its training run
+//   image-no-cds  the same image with the archive turned off
+//   jar           the jar-with-dependencies (plain mvn package in ../demo) on
+//                 this JDK, as the app was started before the image
+// The UI needs a display; run with -p app=headless where there is none.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 15)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({ "ui", "headless" })
+    public String app;
+
+    @Param({ "image", "image-no-cds", "jar" })
+    public String launch;
+
+    @Param({ "../demo/target" })
+    public String demoTarget;
+
+    private List<String> command;
+    private String marker;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path target = Path.of(demoTarget).toAbsolutePath();
+        command = new ArrayList<>();
+        switch (launch) {
+            case "image", "image-no-cds" -> {
+                command.add(existing(target.resolve("image/bin/java")).toString());
+                if (launch.equals("image-no-cds")) {
+                    command.add("-Xshare:off");
+                }
+                command.add("-m");
+                command.add(app.equals("ui") ? "wave.app/wave.app.Main" : "wave.app/wave.app.HeadlessMain");
+            }
+            case "jar" -> {
+                command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+                command.add("--add-modules");
+                command.add("jdk.incubator.vector");
+                command.add("--enable-preview");
+                command.add("-cp");
+                command.add(existing(target.resolve("demo-1.0-SNAPSHOT-jar-with-dependencies.jar")).toString());
+                command.add(app.equals("ui") ? "wave.app.Main" : "wave.app.HeadlessMain");
+            }
+            default -> throw new IllegalArgumentException("unknown launch " + launch);
+        }
+        if (app.equals("ui")) {
+            command.add("--exit-after-frames=1");
+            marker = "first frame";
+        } else {
+            command.add("--steps");
+            command.add("1");
+            marker = "steps:";
+        }
+    }
+
+    @Benchmark
+    public void start() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        boolean started = false;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line; (line = out.readLine()) != null; ) {
+                if (line.contains(marker)) {
+                    started = true;
+                    break;
+                }
+            }
+        }
+        process.destroy();
+        int exit = process.waitFor();
+        if (!started) {
+            throw new IOException(String.join(" ", command) + " exited with " + exit
+                    + " before printing \"" + marker + "\"");
+        }
+    }
+
+    private static Path existing(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            throw new IOException(path + " not found; build it with mvn -Pimage package in ../demo");
+        }
+        return path;
+    }
+}
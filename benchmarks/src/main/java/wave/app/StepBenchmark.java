@@ -0,0 +1,58 @@
+package wave.app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost of one WaveEngine.step() once the front population has reached its
+// steady state (fronts live at most 200 steps). The steady-state front count
+// scales with the number of sources and is printed during setup. Run with
+// -prof gc to get the per-step allocation rate alongside.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class StepBenchmark {
+    private static final int STEADY_STATE_STEPS = 300;
+
+    @Param({ "sample", "rooms-100", "rooms-1000" })
+    public String layout;
+
+    @Param({ "2", "12", "48" })
+    public int sources;
+
+    @Param({ "RAYS", "EVENTS", "ARCS" })
+    public PhysicsMode mode;
+
+    private WaveEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = BenchmarkScenes.build(layout, sources);
+        engine.setMode(mode);
+        for (int i = 0; i < STEADY_STATE_STEPS; i++) {
+            engine.step(WaveEngine.REFERENCE_DT);
+        }
+        System.out.printf("%n[%s, %d sources, %s] steady state: %d fronts%n",
+                layout, sources, mode, engine.frontCount());
+    }
+
+    @Benchmark
+    public int step() {
+        engine.step(WaveEngine.REFERENCE_DT);
+        return engine.frontCount();
+    }
+}
@@ -2,6 +2,10 @@ module wave.app {
     requires javafx.controls;
     requires javafx.fxml;
     requires transitive javafx.graphics;
+    requires static jdk.incubator.vector;
+    requires java.management;
+    requires jdk.management;
+    requires jdk.jfr;
 
     opens wave.app to javafx.fxml;
     exports wave.app;
@@ -0,0 +1,84 @@
+package wave.app;
+
+import java.util.Arrays;
+
+// The changes made to the arc solver's arcs between two recorded frames, the
+// arc mode's counterpart of EventLog. Arcs never change once created: they
+// are appended, and dropped by a compaction that keeps the order of the rest.
+// So a copy of the solver (see ArcSolver.follow) stays identical to it when it
+// appends the same arcs and drops the same indices, and it can sample the
+// points on the writer thread instead of the step thread.
+//
+// Entries are applied in order. The REMOVE entries of one compaction come
+// together, in increasing index order, and are followed by a COMPACT.
+final class ArcLog {
+    static final byte APPEND = 0, REMOVE = 1, COMPACT = 2;
+
+    boolean reset; // Start from no arcs before applying the entries
+    int count;
+    byte[] op = new byte[0];
+    int[] index = new int[0]; // Of a REMOVE, counted before the compaction
+
+    // What sample() needs of an appended arc
+    double[] originX = new double[0], originY = new double[0];
+    double[] birthTime = new double[0];
+    double[] angle0 = new double[0], angle1 = new double[0];
+    double[] amplitude0 = new double[0];
+    int[] generation = new int[0];
+    Wall[] startWall = new Wall[0], endWall = new Wall[0];
+    double[] deathTime = new double[0];
+
+    // Solver state when the log was handed over
+    long stepCount;
+    double time;
+    double speed;
+    double decayPerFrame;
+
+    void clear() {
+        reset = false;
+        count = 0;
+    }
+
+    void append(ArcSolver solver, int i) {
+        int e = next(APPEND);
+        originX[e] = solver.originX[i];
+        originY[e] = solver.originY[i];
+        birthTime[e] = solver.birthTime[i];
+        angle0[e] = solver.angle0[i];
+        angle1[e] = solver.angle1[i];
+        amplitude0[e] = solver.amplitude0[i];
+        generation[e] = solver.generation[i];
+        startWall[e] = solver.startWall[i];
+        endWall[e] = solver.endWall[i];
+        deathTime[e] = solver.deathTime[i];
+    }
+
+    void remove(int i) {
+        int e = next(REMOVE);
+        index[e] = i;
+    }
+
+    void compact() {
+        next(COMPACT);
+    }
+
+    private int next(byte kind) {
+        if (count == op.length) {
+            int capacity = Math.max(64, count * 2);
+            op = Arrays.copyOf(op, capacity);
+            index = Arrays.copyOf(index, capacity);
+            originX = Arrays.copyOf(originX, capacity);
+            originY = Arrays.copyOf(originY, capacity);
+            birthTime = Arrays.copyOf(birthTime, capacity);
+            angle0 = Arrays.copyOf(angle0, capacity);
+            angle1 = Arrays.copyOf(angle1, capacity);
+            amplitude0 = Arrays.copyOf(amplitude0, capacity);
+            generation = Arrays.copyOf(generation, capacity);
+            startWall = Arrays.copyOf(startWall, capacity);
+            endWall = Arrays.copyOf(endWall, capacity);
+            deathTime = Arrays.copyOf(deathTime, capacity);
+        }
+        op[count] = kind;
+        return count++;
+    }
+}
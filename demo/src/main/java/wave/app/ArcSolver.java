@@ -0,0 +1,447 @@
+package wave.app;
+
+import java.util.Arrays;
+
+// Wavefronts as expanding circular arcs instead of 72 separate point rays.
+// An arc is the part of a circle around origin (x, y), emitted at birthTime,
+// that lies between angles angle0 and angle1. Its radius is simply
+// speed * (t - birthTime).
+//
+// When an arc is created it is split, by casting rays at the angular
+// resolution, into sub-arcs that each end on a single wall (or on nothing).
+// When the circle first touches that wall the sub-arc spawns two children that
+// keep the same birth time: the transmitted arc around the same origin and the
+// reflected arc around the origin mirrored in the wall (the image source).
+// Both only exist beyond the wall, so a point at angle a on an arc is drawn
+// while startDistance(a) <= radius < endDistance(a). The live element count
+// is a handful of arcs per emission, and the resolution only affects how
+// precisely the split points follow wall ends.
+class ArcSolver {
+    // Per-arc state in parallel arrays, compacted like WaveFrontPool
+    double[] originX = new double[0], originY = new double[0];
+    double[] birthTime = new double[0];  // Emission time of the original wave
+    double[] angle0 = new double[0], angle1 = new double[0];
+    double[] amplitude0 = new double[0]; // Amplitude at birthTime, coefficients applied
+    int[] generation = new int[0];
+    Wall[] startWall = new Wall[0]; // Arc only exists beyond this wall (null: from the origin)
+    Wall[] endWall = new Wall[0];   // First wall the arc runs into (null: none)
+    double[] contactTime = new double[0]; // When the circle first touches endWall
+    double[] leaveTime = new double[0];   // When it has completely passed endWall
+    double[] deathTime = new double[0];
+    boolean[] spawned = new boolean[0];
+    int size = 0;
+
+    // Since the engine last collected them, for EngineMetrics
+    final int[] collisionsByType = new int[WallType.values().length];
+    int spawnedCount = 0;
+
+    private final WallGrid wallGrid;
+    private final WallGrid.Hit hit = new WallGrid.Hit();
+    private double speed = 1;           // Pixels per second
+    private double resolution = Math.toRadians(0.5);
+    private double decayPerFrame = WaveEngine.DECAY_PER_FRAME;
+    int[] reflectLimit, transmitLimit; // Spawn caps by wall type, set by the engine
+
+    // Changes since the log was last handed over, while a recorder wants them
+    private ArcLog log;
+
+    ArcSolver(WallGrid wallGrid) {
+        this.wallGrid = wallGrid;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void setSpeed(double pixelsPerSecond) {
+        // Radii are derived from birth times, so the speed only affects arcs
+        // created from now on; changing it mid-run is best followed by clear()
+        speed = pixelsPerSecond;
+    }
+
+    // Amplitude kept per reference frame. Like the speed, it is folded into
+    // death times when arcs are created, so a change starts the arcs over.
+    void setDecay(double perFrame) {
+        if (perFrame != decayPerFrame) {
+            decayPerFrame = perFrame;
+            clear();
+        }
+    }
+
+    double getResolution() {
+        return resolution;
+    }
+
+    void setResolution(double radians) {
+        resolution = Math.max(Math.toRadians(0.01), radians);
+    }
+
+    void clear() {
+        size = 0;
+        Arrays.fill(startWall, null);
+        Arrays.fill(endWall, null);
+        if (log != null) {
+            log.clear();
+            log.reset = true;
+        }
+    }
+
+    double radius(int i, double time) {
+        return speed * (time - birthTime[i]);
+    }
+
+    double amplitude(int i, double time) {
+        double frames = (time - birthTime[i]) / WaveEngine.REFERENCE_DT;
+        return amplitude0[i] * Math.pow(decayPerFrame, frames);
+    }
+
+    // A full circle from a source
+    void emit(double x, double y, double time) {
+        split(x, y, time, 0, 2 * Math.PI, 1.0, 0, null, time);
+    }
+
+    // Spawns children whose contact has come and drops finished arcs, up to end
+    void advanceTo(double end) {
+        // Children are appended and handled in the same pass, since they can
+        // reach their own next wall within this step
+        for (int i = 0; i < size; i++) {
+            if (!spawned[i] && contactTime[i] <= end) {
+                spawned[i] = true;
+                spawnChildren(i);
+            }
+        }
+        int live = 0;
+        for (int i = 0; i < size; i++) {
+            if (deathTime[i] > end && leaveTime[i] > end) {
+                if (live != i) {
+                    move(i, live);
+                }
+                live++;
+            } else if (log != null) {
+                log.remove(i);
+            }
+        }
+        if (log != null && live < size) {
+            log.compact();
+        }
+        for (int i = live; i < size; i++) {
+            startWall[i] = null;
+            endWall[i] = null;
+        }
+        size = live;
+    }
+
+    // Squared amplitude over the parts of the arcs inside the rectangle, each
+    // arc counted as raysPerRadian point fronts per radian of it, so the sum
+    // compares with the point modes' sum over their fronts. Sampled at that
+    // density rather than the resolution, as it runs every step of a sweep.
+    double energyIn(double time, double minX, double minY, double maxX, double maxY, double raysPerRadian) {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            double radius = radius(i, time);
+            if (radius <= 0 || time >= deathTime[i]) {
+                continue;
+            }
+            // Skip arcs whose whole circle misses the rectangle
+            double nearX = Math.max(minX, Math.min(originX[i], maxX)) - originX[i];
+            double nearY = Math.max(minY, Math.min(originY[i], maxY)) - originY[i];
+            double farX = Math.max(Math.abs(minX - originX[i]), Math.abs(maxX - originX[i]));
+            double farY = Math.max(Math.abs(minY - originY[i]), Math.abs(maxY - originY[i]));
+            if (nearX * nearX + nearY * nearY > radius * radius || farX * farX + farY * farY < radius * radius) {
+                continue;
+            }
+            double a0 = angle0[i], a1 = angle1[i];
+            int rays = Math.max(1, (int) Math.ceil((a1 - a0) * raysPerRadian));
+            double step = (a1 - a0) / rays;
+            // Walk the directions by rotating one step at a time
+            double dx = Math.cos(a0 + 0.5 * step), dy = Math.sin(a0 + 0.5 * step);
+            double cos = Math.cos(step), sin = Math.sin(step);
+            int inside = 0;
+            for (int k = 0; k < rays; k++) {
+                double x = originX[i] + dx * radius, y = originY[i] + dy * radius;
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY
+                        && radius >= startDistance(i, dx, dy) && radius < endDistance(i, dx, dy)) {
+                    inside++;
+                }
+                double rx = dx * cos - dy * sin;
+                dy = dx * sin + dy * cos;
+                dx = rx;
+            }
+            double amplitude = amplitude(i, time);
+            sum += inside * step * raysPerRadian * amplitude * amplitude;
+        }
+        return sum;
+    }
+
+    // Hands over the changes since the last call and logs from now on into
+    // empty. The first call starts the log with every live arc.
+    ArcLog swapLog(ArcLog empty, long stepCount, double time) {
+        if (log == null) {
+            log = new ArcLog();
+            log.reset = true;
+            for (int i = 0; i < size; i++) {
+                log.append(this, i);
+            }
+        }
+        ArcLog full = log;
+        full.stepCount = stepCount;
+        full.time = time;
+        full.speed = speed;
+        full.decayPerFrame = decayPerFrame;
+        empty.clear();
+        log = empty;
+        return full;
+    }
+
+    void stopLog() {
+        log = null;
+    }
+
+    // Makes this solver, a copy of another one, catch up with that one's log.
+    // The copy only keeps what sample() needs, so it can't advance.
+    void follow(ArcLog changes) {
+        if (changes.reset) {
+            clear();
+        }
+        int removals = -1; // First REMOVE entry of the pending compaction
+        for (int e = 0; e < changes.count; e++) {
+            switch (changes.op[e]) {
+                case ArcLog.APPEND -> {
+                    if (size == originX.length) {
+                        grow(Math.max(64, size * 2));
+                    }
+                    int i = size++;
+                    originX[i] = changes.originX[e];
+                    originY[i] = changes.originY[e];
+                    birthTime[i] = changes.birthTime[e];
+                    angle0[i] = changes.angle0[e];
+                    angle1[i] = changes.angle1[e];
+                    amplitude0[i] = changes.amplitude0[e];
+                    generation[i] = changes.generation[e];
+                    startWall[i] = changes.startWall[e];
+                    endWall[i] = changes.endWall[e];
+                    deathTime[i] = changes.deathTime[e];
+                }
+                case ArcLog.REMOVE -> {
+                    if (removals < 0) {
+                        removals = e;
+                    }
+                }
+                default -> {
+                    int r = removals, live = 0;
+                    for (int i = 0; i < size; i++) {
+                        if (r < e && changes.index[r] == i) {
+                            r++;
+                        } else {
+                            if (live != i) {
+                                move(i, live);
+                            }
+                            live++;
+                        }
+                    }
+                    for (int i = live; i < size; i++) {
+                        startWall[i] = null;
+                        endWall[i] = null;
+                    }
+                    size = live;
+                    removals = -1;
+                }
+            }
+        }
+        speed = changes.speed;
+        decayPerFrame = changes.decayPerFrame;
+    }
+
+    // Samples points along every live arc, spaced about spacing pixels apart
+    int sample(double time, double spacing, FrontSnapshot into) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            double radius = radius(i, time);
+            if (radius <= 0 || time >= deathTime[i]) {
+                continue;
+            }
+            float amplitude = (float) amplitude(i, time);
+            double a0 = angle0[i], a1 = angle1[i];
+            int points = Math.max(1, (int) Math.ceil((a1 - a0) * radius / spacing));
+            double step = (a1 - a0) / points;
+            into.ensureCapacity(n + points);
+            for (int k = 0; k < points; k++) {
+                double a = a0 + (k + 0.5) * step;
+                double dx = Math.cos(a), dy = Math.sin(a);
+                if (radius < startDistance(i, dx, dy) || radius >= endDistance(i, dx, dy)) {
+                    continue;
+                }
+                into.x[n] = (float) (originX[i] + dx * radius);
+                into.y[n] = (float) (originY[i] + dy * radius);
+                into.amplitude[n] = amplitude;
+                into.generation[n] = generation[i];
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private void spawnChildren(int i) {
+        Wall wall = endWall[i];
+        collisionsByType[wall.type.ordinal()]++;
+        int nextGeneration = generation[i] + 1;
+        double time = contactTime[i];
+        double x = originX[i], y = originY[i];
+        double a0 = angle0[i], a1 = angle1[i];
+        double amplitude = amplitude0[i];
+        double birth = birthTime[i];
+        Material material = wall.material;
+        int type = wall.type.ordinal();
+        boolean reflect = material.reflectedAmplitude > 0 && generation[i] < reflectLimit[type];
+
+        if (material.transmittedAmplitude > 0 && generation[i] < transmitLimit[type]) {
+            split(x, y, birth, a0, a1, amplitude * material.transmittedAmplitude, nextGeneration, wall, time);
+        }
+        if (reflect) {
+            // Image source: the origin mirrored in the wall line, angles mirrored
+            // about the wall direction
+            double side = (x - wall.x1) * wall.normalX + (y - wall.y1) * wall.normalY;
+            double mirrorX = x - 2 * side * wall.normalX;
+            double mirrorY = y - 2 * side * wall.normalY;
+            double wallAngle = Math.atan2(wall.y2 - wall.y1, wall.x2 - wall.x1);
+            split(mirrorX, mirrorY, birth, 2 * wallAngle - a1, 2 * wallAngle - a0,
+                    amplitude * material.reflectedAmplitude, nextGeneration, wall, time);
+        }
+    }
+
+    // Adds the arc [a0, a1] around (x, y), split into runs of rays that end on
+    // the same wall. created is when the arc comes into existence, which starts
+    // its age limit.
+    private void split(double x, double y, double birth, double a0, double a1,
+            double amplitude, int generation, Wall from, double created) {
+        double death = created + WaveEngine.MAX_AGE * WaveEngine.REFERENCE_DT;
+        if (amplitude <= WaveEngine.MIN_AMPLITUDE) {
+            return;
+        }
+        if (decayPerFrame < 1) {
+            double floorFrames = Math.log(WaveEngine.MIN_AMPLITUDE / amplitude) / Math.log(decayPerFrame);
+            death = Math.min(death, birth + floorFrames * WaveEngine.REFERENCE_DT);
+        }
+        if (death <= created) {
+            return;
+        }
+        double maxRadius = speed * (death - birth);
+
+        int rays = Math.max(1, (int) Math.ceil((a1 - a0) / resolution));
+        double step = (a1 - a0) / rays;
+        int runStart = 0;
+        Wall runWall = null;
+        double runMin = Double.POSITIVE_INFINITY, runMax = 0;
+        for (int k = 0; k <= rays; k++) {
+            Wall rayWall = null;
+            double rayDistance = 0;
+            if (k < rays) {
+                double a = a0 + (k + 0.5) * step;
+                double dx = Math.cos(a), dy = Math.sin(a);
+                double start = from == null ? 0 : Math.max(0, lineDistance(x, y, from, dx, dy));
+                if (start < maxRadius && wallGrid.firstHit(x + dx * start, y + dy * start,
+                        x + dx * maxRadius, y + dy * maxRadius, from, hit)) {
+                    rayWall = hit.wall;
+                    rayDistance = start + hit.t * (maxRadius - start);
+                }
+            }
+            // Close the current run when the wall changes (or at the end)
+            if (k > 0 && (k == rays || rayWall != runWall)) {
+                add(x, y, birth, a0 + runStart * step, a0 + k * step, amplitude, generation, from,
+                        runWall, runMin, runMax, death);
+                runStart = k;
+                runMin = Double.POSITIVE_INFINITY;
+                runMax = 0;
+            }
+            runWall = rayWall;
+            if (rayWall != null) {
+                runMin = Math.min(runMin, rayDistance);
+                runMax = Math.max(runMax, rayDistance);
+            }
+        }
+    }
+
+    private void add(double x, double y, double birth, double a0, double a1, double amplitude,
+            int generation, Wall from, Wall to, double minDistance, double maxDistance, double death) {
+        if (size == originX.length) {
+            grow(Math.max(64, size * 2));
+        }
+        int i = size++;
+        if (from != null) {
+            spawnedCount++;
+        }
+        originX[i] = x;
+        originY[i] = y;
+        birthTime[i] = birth;
+        angle0[i] = a0;
+        angle1[i] = a1;
+        amplitude0[i] = amplitude;
+        this.generation[i] = generation;
+        startWall[i] = from;
+        endWall[i] = to;
+        spawned[i] = to == null;
+        contactTime[i] = to == null ? Double.POSITIVE_INFINITY : birth + minDistance / speed;
+        leaveTime[i] = to == null ? Double.POSITIVE_INFINITY : birth + maxDistance / speed;
+        deathTime[i] = death;
+        if (log != null) {
+            log.append(this, i);
+        }
+    }
+
+    // Distance from the arc's origin along direction (dx, dy) to where it
+    // starts existing: the start wall's line, or the origin itself
+    private double startDistance(int i, double dx, double dy) {
+        Wall wall = startWall[i];
+        return wall == null ? 0 : lineDistance(originX[i], originY[i], wall, dx, dy);
+    }
+
+    // ... and to where it stops: the end wall's line, if it is ahead at all
+    private double endDistance(int i, double dx, double dy) {
+        Wall wall = endWall[i];
+        if (wall == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double d = lineDistance(originX[i], originY[i], wall, dx, dy);
+        return d < 0 ? Double.POSITIVE_INFINITY : d;
+    }
+
+    private static double lineDistance(double x, double y, Wall wall, double dx, double dy) {
+        double along = dx * wall.normalX + dy * wall.normalY;
+        if (along == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return ((wall.x1 - x) * wall.normalX + (wall.y1 - y) * wall.normalY) / along;
+    }
+
+    private void move(int from, int to) {
+        originX[to] = originX[from];
+        originY[to] = originY[from];
+        birthTime[to] = birthTime[from];
+        angle0[to] = angle0[from];
+        angle1[to] = angle1[from];
+        amplitude0[to] = amplitude0[from];
+        generation[to] = generation[from];
+        startWall[to] = startWall[from];
+        endWall[to] = endWall[from];
+        contactTime[to] = contactTime[from];
+        leaveTime[to] = leaveTime[from];
+        deathTime[to] = deathTime[from];
+        spawned[to] = spawned[from];
+    }
+
+    private void grow(int capacity) {
+        originX = Arrays.copyOf(originX, capacity);
+        originY = Arrays.copyOf(originY, capacity);
+        birthTime = Arrays.copyOf(birthTime, capacity);
+        angle0 = Arrays.copyOf(angle0, capacity);
+        angle1 = Arrays.copyOf(angle1, capacity);
+        amplitude0 = Arrays.copyOf(amplitude0, capacity);
+        generation = Arrays.copyOf(generation, capacity);
+        startWall = Arrays.copyOf(startWall, capacity);
+        endWall = Arrays.copyOf(endWall, capacity);
+        contactTime = Arrays.copyOf(contactTime, capacity);
+        leaveTime = Arrays.copyOf(leaveTime, capacity);
+        deathTime = Arrays.copyOf(deathTime, capacity);
+        spawned = Arrays.copyOf(spawned, capacity);
+    }
+}
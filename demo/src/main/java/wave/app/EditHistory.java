@@ -0,0 +1,59 @@
+package wave.app;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Undo and redo stacks of applied scene edits. Only the edits are kept, not
+// snapshots of the scene: undoing applies an edit's inverse, redoing applies
+// the edit again. The oldest edits fall off past the limit.
+public class EditHistory {
+    private static final int LIMIT = 200;
+
+    private final Deque<SceneEdit> undo = new ArrayDeque<>();
+    private final Deque<SceneEdit> redo = new ArrayDeque<>();
+
+    // A new edit was applied; anything undone before it can no longer be redone
+    public void record(SceneEdit edit) {
+        if (edit.isEmpty()) {
+            return;
+        }
+        undo.push(edit);
+        if (undo.size() > LIMIT) {
+            undo.removeLast();
+        }
+        redo.clear();
+    }
+
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    // The edit to apply to undo the last one, or null when there is none
+    public SceneEdit undo() {
+        SceneEdit edit = undo.poll();
+        if (edit == null) {
+            return null;
+        }
+        redo.push(edit);
+        return edit.inverse();
+    }
+
+    // The edit to apply to redo the last undone one, or null when there is none
+    public SceneEdit redo() {
+        SceneEdit edit = redo.poll();
+        if (edit == null) {
+            return null;
+        }
+        undo.push(edit);
+        return edit;
+    }
+
+    public void clear() {
+        undo.clear();
+        redo.clear();
+    }
+}
@@ -0,0 +1,366 @@
+package wave.app;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.FlightRecorder;
+
+// Counters and histograms filled in by the engine as it steps: time per step
+// and per phase, fronts emitted, spawned, pruned and removed, collisions by wall type
+// and bytes allocated by the stepping thread. Everything on the step path is
+// a field write or an array increment, so collecting never allocates.
+//
+// Values are written by the thread that steps and read by the UI overlay, JMX
+// and the JFR periodic hook without locking. A reading taken mid-step can mix
+// two steps, which is fine for monitoring.
+public class EngineMetrics implements EngineMetricsMXBean {
+    static final int EMIT = 0, MOVE = 1, MERGE = 2, BUDGET = 3, HEATMAP = 4;
+    static final String[] PHASES = { "emit", "move+collide", "merge", "budget", "heatmap" };
+
+    // Generations past the last bucket are counted in it
+    static final int GENERATION_BUCKETS = 8;
+    // Live fronts by generation cost a pass over every front, so they are only
+    // counted every this many steps
+    static final int GENERATION_SAMPLE_STEPS = 30;
+
+    private static final WallType[] WALL_TYPES = WallType.values();
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private boolean enabled = true;
+    final LatencyHistogram stepTimes = new LatencyHistogram();
+    final LatencyHistogram renderTimes = new LatencyHistogram();
+
+    // Last step
+    private final long[] phaseNanos = new long[PHASES.length];
+    final int[] collisionsByType = new int[WALL_TYPES.length];
+    final int[] liveByGeneration = new int[GENERATION_BUCKETS];
+    private int liveFronts, emitted, spawned, removed, merged, culled;
+    private int prunedFaint, prunedOutside;
+    private long allocated;
+
+    // Running totals, for the periodic JFR event
+    private long steps, totalSpawned, totalRemoved, totalCollisions, totalAllocated, totalCulled, totalPruned;
+
+    // Step in progress
+    private long stepStart, phaseStart, allocatedAtStart;
+    private int frontsAtStart;
+
+    private ObjectName registeredName;
+    private Runnable jfrHook;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // Makes the metrics visible over JMX and in flight recordings. Only one
+    // engine per JVM can hold the name; later ones replace it. The first call
+    // in a JVM starts JMX and JFR up, which takes most of a second.
+    public void register() {
+        try {
+            ObjectName name = new ObjectName("wave.app:type=EngineMetrics");
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            System.err.println("Engine metrics not registered with JMX: " + e);
+        }
+        if (jfrHook == null) {
+            jfrHook = new PeriodicEvent();
+            FlightRecorder.addPeriodicEvent(StepMetricsEvent.class, jfrHook);
+        }
+    }
+
+    public void unregister() {
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (JMException e) {
+                // Someone else took the name over
+            }
+            registeredName = null;
+        }
+        if (jfrHook != null) {
+            FlightRecorder.removePeriodicEvent(jfrHook);
+            jfrHook = null;
+        }
+    }
+
+    // === Called by the engine while stepping ===
+
+    void beginStep(int fronts) {
+        if (!enabled) {
+            return;
+        }
+        frontsAtStart = fronts;
+        emitted = 0;
+        spawned = 0;
+        merged = 0;
+        culled = 0;
+        prunedFaint = 0;
+        prunedOutside = 0;
+        Arrays.fill(collisionsByType, 0);
+        allocatedAtStart = allocatedBytes();
+        stepStart = phaseStart = System.nanoTime();
+    }
+
+    // Ends the given phase, starting the next one
+    void endPhase(int phase) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        phaseNanos[phase] = now - phaseStart;
+        phaseStart = now;
+    }
+
+    void emitted(int count) {
+        emitted += count;
+    }
+
+    void spawned(int count) {
+        spawned += count;
+    }
+
+    // Fronts a collision did not spawn, see SpawnCulling
+    void pruned(int faint, int outside) {
+        prunedFaint += faint;
+        prunedOutside += outside;
+    }
+
+    // Fronts the budget folded into others or dropped
+    void budget(int merged, int culled) {
+        this.merged += merged;
+        this.culled += culled;
+    }
+
+    // Adds per-type collision counts gathered by a stepper or solver
+    void collisions(int[] byType) {
+        for (int t = 0; t < byType.length; t++) {
+            collisionsByType[t] += byType[t];
+        }
+    }
+
+    boolean wantsGenerations(long stepCount) {
+        return enabled && stepCount % GENERATION_SAMPLE_STEPS == 0;
+    }
+
+    void endStep(int fronts) {
+        if (!enabled) {
+            return;
+        }
+        long nanos = System.nanoTime() - stepStart;
+        stepTimes.record(nanos);
+        liveFronts = fronts;
+        removed = Math.max(0, frontsAtStart + emitted + spawned - fronts);
+        allocated = Math.max(0, allocatedBytes() - allocatedAtStart);
+        int collisions = 0;
+        for (int count : collisionsByType) {
+            collisions += count;
+        }
+        steps++;
+        totalSpawned += spawned;
+        totalRemoved += removed;
+        totalCollisions += collisions;
+        totalAllocated += allocated;
+        totalCulled += merged + culled;
+        totalPruned += prunedFaint + prunedOutside;
+    }
+
+    // === Called by the UI ===
+
+    public void recordRender(long nanos) {
+        if (enabled) {
+            renderTimes.record(nanos);
+        }
+    }
+
+    // Each histogram has one writer, so each is best started over on its
+    // writer's thread: this one on the thread that renders, the step times
+    // on the one that steps
+    public void resetRenderTimes() {
+        renderTimes.reset();
+    }
+
+    public void resetStepTimes() {
+        stepTimes.reset();
+    }
+
+    public long getPhaseNanos(int phase) {
+        return phaseNanos[phase];
+    }
+
+    public int getCollisions(WallType type) {
+        return collisionsByType[type.ordinal()];
+    }
+
+    // === EngineMetricsMXBean ===
+
+    @Override
+    public long getSteps() {
+        return steps;
+    }
+
+    @Override
+    public double getStepP50Micros() {
+        return stepTimes.percentile(0.50) / 1e3;
+    }
+
+    @Override
+    public double getStepP99Micros() {
+        return stepTimes.percentile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getStepMaxMicros() {
+        return stepTimes.max() / 1e3;
+    }
+
+    @Override
+    public double getRenderP50Micros() {
+        return renderTimes.percentile(0.50) / 1e3;
+    }
+
+    @Override
+    public double getRenderP99Micros() {
+        return renderTimes.percentile(0.99) / 1e3;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMicros() {
+        Map<String, Double> phases = new LinkedHashMap<>();
+        for (int p = 0; p < PHASES.length; p++) {
+            phases.put(PHASES[p], phaseNanos[p] / 1e3);
+        }
+        return phases;
+    }
+
+    @Override
+    public int getLiveFronts() {
+        return liveFronts;
+    }
+
+    @Override
+    public int[] getLiveFrontsByGeneration() {
+        return liveByGeneration.clone();
+    }
+
+    @Override
+    public int getEmittedPerStep() {
+        return emitted;
+    }
+
+    @Override
+    public int getSpawnedPerStep() {
+        return spawned;
+    }
+
+    @Override
+    public int getRemovedPerStep() {
+        return removed;
+    }
+
+    @Override
+    public int getMergedPerStep() {
+        return merged;
+    }
+
+    @Override
+    public int getCulledPerStep() {
+        return culled;
+    }
+
+    @Override
+    public int getPrunedFaintPerStep() {
+        return prunedFaint;
+    }
+
+    @Override
+    public int getPrunedOutsidePerStep() {
+        return prunedOutside;
+    }
+
+    @Override
+    public Map<String, Integer> getCollisionsPerStepByWallType() {
+        Map<String, Integer> collisions = new LinkedHashMap<>();
+        for (WallType type : WALL_TYPES) {
+            collisions.put(type.name(), collisionsByType[type.ordinal()]);
+        }
+        return collisions;
+    }
+
+    @Override
+    public long getAllocatedBytesPerStep() {
+        return allocated;
+    }
+
+    // Starts the histograms over, e.g. after changing the scene. Called on a
+    // JMX thread, so each histogram starts over when its writer next records.
+    @Override
+    public void reset() {
+        stepTimes.requestReset();
+        renderTimes.requestReset();
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean;
+        }
+        return null;
+    }
+
+    // Emits one StepMetricsEvent per period with what happened since the last
+    private class PeriodicEvent implements Runnable {
+        private final long[] lastCounts = new long[LatencyHistogram.BUCKETS];
+        private final long[] counts = new long[LatencyHistogram.BUCKETS];
+        private long lastSteps, lastSpawned, lastRemoved, lastCollisions, lastAllocated, lastCulled, lastPruned;
+
+        @Override
+        public void run() {
+            stepTimes.copyCounts(counts);
+            long total = 0;
+            for (int b = 0; b < counts.length; b++) {
+                long now = counts[b];
+                counts[b] = Math.max(0, now - lastCounts[b]);
+                lastCounts[b] = now;
+                total += counts[b];
+            }
+            StepMetricsEvent event = new StepMetricsEvent();
+            event.steps = steps - lastSteps;
+            event.stepP50 = LatencyHistogram.percentile(counts, total, 0.50);
+            event.stepP99 = LatencyHistogram.percentile(counts, total, 0.99);
+            event.stepMax = LatencyHistogram.percentile(counts, total, 1.0);
+            event.liveFronts = liveFronts;
+            event.spawned = totalSpawned - lastSpawned;
+            event.removed = totalRemoved - lastRemoved;
+            event.culled = totalCulled - lastCulled;
+            event.pruned = totalPruned - lastPruned;
+            event.collisions = totalCollisions - lastCollisions;
+            event.allocated = totalAllocated - lastAllocated;
+            event.commit();
+            lastSteps = steps;
+            lastSpawned = totalSpawned;
+            lastRemoved = totalRemoved;
+            lastCollisions = totalCollisions;
+            lastAllocated = totalAllocated;
+            lastCulled = totalCulled;
+            lastPruned = totalPruned;
+        }
+    }
+}
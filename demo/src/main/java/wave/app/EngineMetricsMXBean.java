@@ -0,0 +1,49 @@
+package wave.app;
+
+import java.util.Map;
+
+// Management view of EngineMetrics, registered as wave.app:type=EngineMetrics.
+// Durations are in microseconds; "per step" values are from the last step.
+public interface EngineMetricsMXBean {
+    long getSteps();
+
+    double getStepP50Micros();
+
+    double getStepP99Micros();
+
+    double getStepMaxMicros();
+
+    double getRenderP50Micros();
+
+    double getRenderP99Micros();
+
+    Map<String, Double> getPhaseMicros();
+
+    int getLiveFronts();
+
+    int[] getLiveFrontsByGeneration();
+
+    int getEmittedPerStep();
+
+    int getSpawnedPerStep();
+
+    int getRemovedPerStep();
+
+    // Part of the removed fronts that went to keep within the front budget
+    int getMergedPerStep();
+
+    int getCulledPerStep();
+
+    // Fronts collisions did not spawn: too faint to outlive a step, or
+    // heading away outside the map and walls
+    int getPrunedFaintPerStep();
+
+    int getPrunedOutsidePerStep();
+
+    Map<String, Integer> getCollisionsPerStepByWallType();
+
+    long getAllocatedBytesPerStep();
+
+    // Starts the latency histograms over from the next step and frame
+    void reset();
+}
@@ -0,0 +1,153 @@
+package wave.app;
+
+import java.util.Arrays;
+
+// The changes made to the event solver's fronts between two recorded frames.
+// An event front only changes when one of its events fires, so a recorder
+// that keeps its own copy of the fronts (a Mirror) needs just these, not all
+// of the fronts every step, to know where each one is at any time. That keeps
+// the step thread's share of recording proportional to the events of a step.
+//
+// Entries are applied in order: a slot that is added, or whose line of motion
+// changed, comes with its new state; a released slot only with its number.
+final class EventLog {
+    boolean reset; // Start from no fronts before applying the entries
+    int count;
+    int[] slot = new int[0]; // ~slot for a release
+    double[] originX = new double[0], originY = new double[0], originTime = new double[0];
+    double[] dirX = new double[0], dirY = new double[0];
+    double[] birthTime = new double[0], amplitude0 = new double[0];
+    int[] generation = new int[0];
+
+    // Solver state when the log was handed over
+    long stepCount;
+    double time;
+    double speed;
+    double decayPerFrame;
+
+    void clear() {
+        reset = false;
+        count = 0;
+    }
+
+    void set(EventSolver solver, int s) {
+        int e = next();
+        slot[e] = s;
+        originX[e] = solver.originX[s];
+        originY[e] = solver.originY[s];
+        originTime[e] = solver.originTime[s];
+        dirX[e] = solver.dirX[s];
+        dirY[e] = solver.dirY[s];
+        birthTime[e] = solver.birthTime[s];
+        amplitude0[e] = solver.amplitude0[s];
+        generation[e] = solver.generation[s];
+    }
+
+    void release(int s) {
+        int e = next();
+        slot[e] = ~s;
+    }
+
+    private int next() {
+        if (count == slot.length) {
+            int capacity = Math.max(256, count * 2);
+            slot = Arrays.copyOf(slot, capacity);
+            originX = Arrays.copyOf(originX, capacity);
+            originY = Arrays.copyOf(originY, capacity);
+            originTime = Arrays.copyOf(originTime, capacity);
+            dirX = Arrays.copyOf(dirX, capacity);
+            dirY = Arrays.copyOf(dirY, capacity);
+            birthTime = Arrays.copyOf(birthTime, capacity);
+            amplitude0 = Arrays.copyOf(amplitude0, capacity);
+            generation = Arrays.copyOf(generation, capacity);
+        }
+        return count++;
+    }
+
+    // A copy of the solver's fronts kept up to date from its logs, by slot,
+    // so it evaluates to exactly what WaveEngine.snapshot gives in event mode
+    static final class Mirror {
+        private double[] originX = new double[0], originY = new double[0], originTime = new double[0];
+        private double[] dirX = new double[0], dirY = new double[0];
+        private double[] birthTime = new double[0], amplitude0 = new double[0];
+        private int[] generation = new int[0];
+        private boolean[] live = new boolean[0];
+        private int slots = 0;
+        private int liveCount = 0;
+        private float[] decayTable;
+        private double decayPerFrame = Double.NaN;
+
+        void apply(EventLog log) {
+            if (log.reset) {
+                Arrays.fill(live, 0, slots, false);
+                slots = 0;
+                liveCount = 0;
+            }
+            for (int e = 0; e < log.count; e++) {
+                int s = log.slot[e];
+                if (s < 0) {
+                    s = ~s;
+                    if (live[s]) {
+                        live[s] = false;
+                        liveCount--;
+                    }
+                    continue;
+                }
+                if (s >= live.length) {
+                    grow(Math.max(256, Math.max(s + 1, live.length * 2)));
+                }
+                slots = Math.max(slots, s + 1);
+                originX[s] = log.originX[e];
+                originY[s] = log.originY[e];
+                originTime[s] = log.originTime[e];
+                dirX[s] = log.dirX[e];
+                dirY[s] = log.dirY[e];
+                birthTime[s] = log.birthTime[e];
+                amplitude0[s] = log.amplitude0[e];
+                generation[s] = log.generation[e];
+                if (!live[s]) {
+                    live[s] = true;
+                    liveCount++;
+                }
+            }
+            if (log.decayPerFrame != decayPerFrame) {
+                decayPerFrame = log.decayPerFrame;
+                decayTable = EventSolver.decayTable(decayPerFrame);
+            }
+        }
+
+        // The fronts at the time of the last log applied
+        void evaluate(EventLog log, FrontSnapshot into) {
+            double time = log.time;
+            double speed = log.speed;
+            into.ensureCapacity(liveCount);
+            int count = 0;
+            for (int s = 0; s < slots; s++) {
+                if (live[s]) {
+                    into.x[count] = (float) (originX[s] + dirX[s] * speed * (time - originTime[s]));
+                    into.y[count] = (float) (originY[s] + dirY[s] * speed * (time - originTime[s]));
+                    into.amplitude[count] = EventSolver.drawAmplitude(decayTable, amplitude0[s], time - birthTime[s]);
+                    into.generation[count] = generation[s];
+                    count++;
+                }
+            }
+            into.count = count;
+            into.stepCount = log.stepCount;
+            into.time = time;
+            into.fieldCols = 0;
+            into.heatCols = 0;
+        }
+
+        private void grow(int capacity) {
+            originX = Arrays.copyOf(originX, capacity);
+            originY = Arrays.copyOf(originY, capacity);
+            originTime = Arrays.copyOf(originTime, capacity);
+            dirX = Arrays.copyOf(dirX, capacity);
+            dirY = Arrays.copyOf(dirY, capacity);
+            birthTime = Arrays.copyOf(birthTime, capacity);
+            amplitude0 = Arrays.copyOf(amplitude0, capacity);
+            generation = Arrays.copyOf(generation, capacity);
+            live = Arrays.copyOf(live, capacity);
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package wave.app;
+
+import java.util.Arrays;
+
+// Event-driven alternative to stepping every front every step. A front moves
+// in a straight line at constant speed until it hits a wall or dies, so both
+// moments can be worked out once, when the front is created: the wall hit by
+// a grid walk along the whole remaining ray, the death from the decay and age
+// limits. Each front sits in a min-heap keyed by that event time and is only
+// touched again when its event fires. Positions in between are computed
+// lazily from where and when the front last changed direction.
+class EventSolver {
+    // Per-front state, indexed by slot. Slots are recycled through a free list
+    // so a front keeps its slot (and its heap entry) for its whole life.
+    double[] originX = new double[0], originY = new double[0]; // Position at originTime
+    double[] originTime = new double[0];
+    double[] dirX = new double[0], dirY = new double[0];
+    double[] birthTime = new double[0];  // For decay and the age limit
+    double[] amplitude0 = new double[0]; // Amplitude at birthTime
+    double[] eventTime = new double[0];
+    int[] generation = new int[0];
+    double[] phase = new double[0]; // Signal phase carried from the source
+    Wall[] eventWall = new Wall[0]; // Wall hit at eventTime, null when it dies then
+    Wall[] lastWall = new Wall[0];  // Wall the front started on, skipped by the TOI query
+    boolean[] live = new boolean[0]; // Lets snapshots walk the slots in memory order
+
+    // Min-heap of live slots by eventTime; the heap doubles as the live list
+    int[] heap = new int[0];
+    int heapSize = 0;
+
+    private int[] free = new int[0];
+    private int freeCount = 0;
+    private int slotCount = 0;
+
+    // Decay factor by age in 1/16ths of a reference frame, rebuilt when the
+    // attenuation changes. Snapshots only need 8-bit amplitudes, and a lookup
+    // is far cheaper than pow() for every front.
+    private static final int DECAY_STEPS_PER_FRAME = 16;
+    private float[] decayTable;
+    private double decayPerFrame;
+
+    private final WallGrid wallGrid;
+    private final WallGrid.Hit hit = new WallGrid.Hit();
+    private double speed; // Pixels per second
+    int[] reflectLimit, transmitLimit; // Spawn caps by wall type, set by the engine
+    SpawnCulling culling; // Per reference frame; null when off
+
+    // Since the engine last collected them, for EngineMetrics
+    final int[] collisionsByType = new int[WallType.values().length];
+    int spawnedCount = 0;
+    int prunedFaint = 0, prunedOutside = 0;
+
+    // Changes since the log was last handed over, while a recorder wants them
+    private EventLog log;
+
+    EventSolver(WallGrid wallGrid) {
+        this.wallGrid = wallGrid;
+        setDecay(WaveEngine.DECAY_PER_FRAME, 0);
+    }
+
+    int size() {
+        return heapSize;
+    }
+
+    // Slots ever handed out; the live ones are among [0, slotCount())
+    int slotCount() {
+        return slotCount;
+    }
+
+    void setSpeed(double pixelsPerSecond, double now) {
+        if (pixelsPerSecond != speed && heapSize > 0) {
+            // Re-anchor every front at its current position, then reschedule
+            for (int h = 0; h < heapSize; h++) {
+                int s = heap[h];
+                originX[s] = x(s, now);
+                originY[s] = y(s, now);
+                originTime[s] = now;
+            }
+            speed = pixelsPerSecond;
+            reschedule(now);
+            logAll();
+        }
+        speed = pixelsPerSecond;
+    }
+
+    // Amplitude kept per reference frame. Live fronts keep their current
+    // amplitude and decay at the new rate from now on.
+    void setDecay(double perFrame, double now) {
+        if (perFrame == decayPerFrame) {
+            return;
+        }
+        for (int h = 0; h < heapSize; h++) {
+            int s = heap[h];
+            double frames = (now - birthTime[s]) / WaveEngine.REFERENCE_DT;
+            amplitude0[s] = amplitude(s, now) / Math.pow(perFrame, frames);
+        }
+        decayPerFrame = perFrame;
+        decayTable = decayTable(perFrame);
+        if (heapSize > 0) {
+            reschedule(now);
+            logAll();
+        }
+    }
+
+    static float[] decayTable(double perFrame) {
+        float[] table = new float[WaveEngine.MAX_AGE * DECAY_STEPS_PER_FRAME + 1];
+        for (int k = 0; k < table.length; k++) {
+            table[k] = (float) Math.pow(perFrame, (double) k / DECAY_STEPS_PER_FRAME);
+        }
+        return table;
+    }
+
+    double x(int slot, double time) {
+        return originX[slot] + dirX[slot] * speed * (time - originTime[slot]);
+    }
+
+    double y(int slot, double time) {
+        return originY[slot] + dirY[slot] * speed * (time - originTime[slot]);
+    }
+
+    double amplitude(int slot, double time) {
+        double frames = (time - birthTime[slot]) / WaveEngine.REFERENCE_DT;
+        return amplitude0[slot] * Math.pow(decayPerFrame, frames);
+    }
+
+    // Approximate amplitude for drawing and recording
+    float drawAmplitude(int slot, double time) {
+        return drawAmplitude(decayTable, amplitude0[slot], time - birthTime[slot]);
+    }
+
+    static float drawAmplitude(float[] decayTable, double amplitude0, double age) {
+        int k = (int) (age * (DECAY_STEPS_PER_FRAME / WaveEngine.REFERENCE_DT));
+        return (float) amplitude0 * decayTable[Math.max(0, Math.min(decayTable.length - 1, k))];
+    }
+
+    // Hands over the changes since the last call and logs from now on into
+    // empty. The first call starts the log with every live front.
+    EventLog swapLog(EventLog empty, long stepCount, double time) {
+        if (log == null) {
+            log = new EventLog();
+            log.reset = true;
+            logAll();
+        }
+        EventLog full = log;
+        full.stepCount = stepCount;
+        full.time = time;
+        full.speed = speed;
+        full.decayPerFrame = decayPerFrame;
+        empty.clear();
+        log = empty;
+        return full;
+    }
+
+    void stopLog() {
+        log = null;
+    }
+
+    private void logAll() {
+        if (log != null) {
+            for (int h = 0; h < heapSize; h++) {
+                log.set(this, heap[h]);
+            }
+        }
+    }
+
+    int age(int slot, double time, double stepSeconds) {
+        return (int) Math.round((time - birthTime[slot]) / stepSeconds);
+    }
+
+    // Adds a front that is at (x, y) at time now and was born at birthTime
+    void add(double x, double y, double dirX, double dirY, double amplitude0,
+            int generation, double phase, double birthTime, double now, Wall startWall) {
+        int s = allocate();
+        originX[s] = x;
+        originY[s] = y;
+        originTime[s] = now;
+        this.dirX[s] = dirX;
+        this.dirY[s] = dirY;
+        this.birthTime[s] = birthTime;
+        this.amplitude0[s] = amplitude0;
+        this.generation[s] = generation;
+        this.phase[s] = phase;
+        lastWall[s] = startWall;
+        live[s] = true;
+        if (log != null) {
+            log.set(this, s);
+        }
+        schedule(s, now);
+        heap[heapSize++] = s;
+        siftUp(heapSize - 1);
+    }
+
+    // Fires every event up to and including time end, in time order
+    void advanceTo(double end) {
+        while (heapSize > 0 && eventTime[heap[0]] <= end) {
+            int s = heap[0];
+            removeTop();
+            Wall wall = eventWall[s];
+            if (wall != null) {
+                collide(s, wall);
+            }
+            release(s);
+        }
+    }
+
+    // Recomputes every pending event from now on, e.g. after walls changed
+    void reschedule(double now) {
+        for (int h = 0; h < heapSize; h++) {
+            schedule(heap[h], now);
+        }
+        for (int h = heapSize / 2 - 1; h >= 0; h--) {
+            siftDown(h);
+        }
+    }
+
+    // Keeps the fronts whose score (indexed like the heap) is above threshold,
+    // plus the first ties at it, and frees the rest; returns how many went
+    int retain(float[] scores, float threshold, int ties) {
+        int kept = 0;
+        for (int h = 0; h < heapSize; h++) {
+            int s = heap[h];
+            float score = scores[h];
+            if (score > threshold || (score == threshold && ties-- > 0)) {
+                heap[kept++] = s;
+            } else {
+                release(s);
+            }
+        }
+        int removed = heapSize - kept;
+        heapSize = kept;
+        for (int h = heapSize / 2 - 1; h >= 0; h--) {
+            siftDown(h);
+        }
+        return removed;
+    }
+
+    void clear() {
+        heapSize = 0;
+        freeCount = 0;
+        slotCount = 0;
+        Arrays.fill(live, false);
+        Arrays.fill(eventWall, null);
+        Arrays.fill(lastWall, null);
+        if (log != null) {
+            log.clear();
+            log.reset = true;
+        }
+    }
+
+    private void collide(int s, Wall wall) {
+        double time = eventTime[s];
+        double x = x(s, time);
+        double y = y(s, time);
+        double amplitude = amplitude(s, time);
+        double dx = dirX[s];
+        double dy = dirY[s];
+        int nextGeneration = generation[s] + 1;
+        collisionsByType[wall.type.ordinal()]++;
+
+        // Reflection vector: R = V - 2*(V·N)*N
+        double dot = dx * wall.normalX + dy * wall.normalY;
+        double reflectX = dx - 2 * dot * wall.normalX;
+        double reflectY = dy - 2 * dot * wall.normalY;
+
+        double wallReflection = wall.material.reflectedAmplitude;
+        double wallTransmission = wall.material.transmittedAmplitude;
+        int type = wall.type.ordinal();
+
+        // Spawned fronts start life at the hit point, like in the stepped mode
+        if (wallReflection > 0 && generation[s] < reflectLimit[type]
+                && worthSpawning(x, y, reflectX, reflectY, amplitude * wallReflection)) {
+            add(x, y, reflectX, reflectY, amplitude * wallReflection, nextGeneration, phase[s], time, time, wall);
+            spawnedCount++;
+        }
+        if (wallTransmission > 0 && generation[s] < transmitLimit[type]
+                && worthSpawning(x, y, dx, dy, amplitude * wallTransmission)) {
+            add(x, y, dx, dy, amplitude * wallTransmission, nextGeneration, phase[s], time, time, wall);
+            spawnedCount++;
+        }
+    }
+
+    // As in FrontStepper
+    private boolean worthSpawning(double x, double y, double dx, double dy, double amplitude) {
+        if (culling == null) {
+            return true;
+        }
+        if (culling.faint(amplitude)) {
+            prunedFaint++;
+            return false;
+        }
+        if (culling.outside(x, y, dx, dy, amplitude)) {
+            prunedOutside++;
+            return false;
+        }
+        return true;
+    }
+
+    // Works out the next event of a front that is live at time now
+    private void schedule(int s, double now) {
+        // Death: whichever of the age limit and the amplitude floor comes first
+        double framesLeft = WaveEngine.MAX_AGE;
+        if (amplitude0[s] > WaveEngine.MIN_AMPLITUDE) {
+            if (decayPerFrame < 1) {
+                framesLeft = Math.min(framesLeft,
+                        Math.log(WaveEngine.MIN_AMPLITUDE / amplitude0[s]) / Math.log(decayPerFrame));
+            }
+        } else {
+            framesLeft = 0;
+        }
+        double death = Math.max(now, birthTime[s] + framesLeft * WaveEngine.REFERENCE_DT);
+
+        // Collision: the first wall along the rest of the ray before death
+        eventTime[s] = death;
+        eventWall[s] = null;
+        if (death > now && speed > 0) {
+            double x0 = x(s, now), y0 = y(s, now);
+            double x1 = x(s, death), y1 = y(s, death);
+            if (wallGrid.firstHit(x0, y0, x1, y1, lastWall[s], hit)) {
+                eventTime[s] = now + hit.t * (death - now);
+                eventWall[s] = hit.wall;
+            }
+        }
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        if (slotCount == originX.length) {
+            grow(Math.max(256, slotCount * 2));
+        }
+        return slotCount++;
+    }
+
+    private void release(int s) {
+        eventWall[s] = null;
+        lastWall[s] = null;
+        live[s] = false;
+        free[freeCount++] = s;
+        if (log != null) {
+            log.release(s);
+        }
+    }
+
+    private void grow(int capacity) {
+        originX = Arrays.copyOf(originX, capacity);
+        originY = Arrays.copyOf(originY, capacity);
+        originTime = Arrays.copyOf(originTime, capacity);
+        dirX = Arrays.copyOf(dirX, capacity);
+        dirY = Arrays.copyOf(dirY, capacity);
+        birthTime = Arrays.copyOf(birthTime, capacity);
+        amplitude0 = Arrays.copyOf(amplitude0, capacity);
+        eventTime = Arrays.copyOf(eventTime, capacity);
+        generation = Arrays.copyOf(generation, capacity);
+        phase = Arrays.copyOf(phase, capacity);
+        eventWall = Arrays.copyOf(eventWall, capacity);
+        lastWall = Arrays.copyOf(lastWall, capacity);
+        live = Arrays.copyOf(live, capacity);
+        heap = Arrays.copyOf(heap, capacity);
+        free = Arrays.copyOf(free, capacity);
+    }
+
+    private void removeTop() {
+        int last = heap[--heapSize];
+        if (heapSize > 0) {
+            heap[0] = last;
+            siftDown(0);
+        }
+    }
+
+    // Earlier event first; equal times fall back to the slot for a stable order
+    private boolean before(int a, int b) {
+        double ta = eventTime[a], tb = eventTime[b];
+        return ta < tb || (ta == tb && a < b);
+    }
+
+    private void siftUp(int h) {
+        int s = heap[h];
+        while (h > 0) {
+            int parent = (h - 1) >>> 1;
+            int p = heap[parent];
+            if (!before(s, p)) {
+                break;
+            }
+            heap[h] = p;
+            h = parent;
+        }
+        heap[h] = s;
+    }
+
+    private void siftDown(int h) {
+        int s = heap[h];
+        int half = heapSize >>> 1;
+        while (h < half) {
+            int child = 2 * h + 1;
+            int c = heap[child];
+            int right = child + 1;
+            if (right < heapSize && before(heap[right], c)) {
+                child = right;
+                c = heap[child];
+            }
+            if (!before(c, s)) {
+                break;
+            }
+            heap[h] = c;
+            h = child;
+        }
+        heap[h] = s;
+    }
+}
@@ -0,0 +1,263 @@
+package wave.app;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Finite-difference solver for the 2D scalar wave equation u_tt = c^2 lap(u)
+// on a uniform float grid covering the map. Unlike the particle modes it gets
+// interference, diffraction around wall ends and superposition of sources for
+// free, and its cost is fixed per cell however many sources there are.
+//
+// Update per cell (leapfrog, damping folded into the coefficients):
+//   u' = ca * u - cb * u_prev + cc * courant^2 * lap(u)
+// Walls are rasterised into the coefficients: a wall cell scales its value by
+// one minus the wall's reflection (a mirror becomes a hard reflector) and damps
+// by its absorption. A sponge layer ramps the damping up towards the map edges so
+// outgoing waves are absorbed instead of reflected back in.
+class FdtdSolver {
+    private static final int SPONGE_CELLS = 16;
+    private static final float SPONGE_MAX_DAMPING = 0.15f;
+    private static final float WALL_MAX_DAMPING = 0.9f;
+    private static final double MAX_COURANT = 0.5; // Below the 2D limit of 1/sqrt(2)
+    private static final int ROWS_PER_BAND = 32;
+
+    private final double cellSize;
+    private int cols, rows;
+    private float[] current = new float[0], previous = new float[0];
+    private float[] ca = new float[0], cb = new float[0], cc = new float[0];
+    private float[] wallPass = new float[0], wallDamping = new float[0];
+
+    private Band[] bands = new Band[0];
+    private final RecursiveAction parallelUpdate = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            for (int b = 1; b < bands.length; b++) {
+                bands[b].fork();
+            }
+            bands[0].invoke();
+            for (int b = 1; b < bands.length; b++) {
+                bands[b].join();
+            }
+        }
+    };
+
+    FdtdSolver(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    double getCellSize() {
+        return cellSize;
+    }
+
+    int getCols() {
+        return cols;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    // Sizes the grid to the map and rasterises the walls, dropping the field
+    void rebuild(double width, double height, List<Wall> walls) {
+        cols = Math.max(3, (int) Math.ceil(width / cellSize));
+        rows = Math.max(3, (int) Math.ceil(height / cellSize));
+        int cells = cols * rows;
+        current = new float[cells];
+        previous = new float[cells];
+        ca = new float[cells];
+        cb = new float[cells];
+        cc = new float[cells];
+        wallPass = new float[cells];
+        wallDamping = new float[cells];
+        Arrays.fill(wallPass, 1f);
+        for (Wall wall : walls) {
+            rasterise(wall);
+        }
+        updateCoefficients();
+
+        bands = new Band[(rows + ROWS_PER_BAND - 1) / ROWS_PER_BAND];
+        for (int b = 0; b < bands.length; b++) {
+            bands[b] = new Band(b * ROWS_PER_BAND, Math.min(rows, (b + 1) * ROWS_PER_BAND));
+        }
+    }
+
+    // Incremental update for a newly added wall
+    void addWall(Wall wall) {
+        if (cols == 0) {
+            return;
+        }
+        rasterise(wall);
+        updateCoefficients();
+    }
+
+    // Rasterises the walls again from scratch, keeping the field, e.g. after
+    // walls were removed; a cell cannot tell which walls made it what it is
+    void setWalls(List<Wall> walls) {
+        if (cols == 0) {
+            return;
+        }
+        Arrays.fill(wallPass, 1f);
+        Arrays.fill(wallDamping, 0f);
+        for (Wall wall : walls) {
+            rasterise(wall);
+        }
+        updateCoefficients();
+    }
+
+    void clearField() {
+        Arrays.fill(current, 0f);
+        Arrays.fill(previous, 0f);
+    }
+
+    // Advances by dt seconds at the given speed (pixels per second), driving
+    // each source as a sine at its frequency and phase
+    void step(double dt, double speed, List<WaveSource> sources, double time, ForkJoinPool pool) {
+        if (cols == 0) {
+            return;
+        }
+        double courant = speed * dt / cellSize;
+        int substeps = Math.max(1, (int) Math.ceil(courant / MAX_COURANT));
+        double subDt = dt / substeps;
+        float courant2 = (float) ((courant / substeps) * (courant / substeps));
+
+        for (int s = 0; s < substeps; s++) {
+            double t = time + s * subDt;
+            for (WaveSource source : sources) {
+                int cx = (int) (source.x / cellSize);
+                int cy = (int) (source.y / cellSize);
+                if (cx > 0 && cy > 0 && cx < cols - 1 && cy < rows - 1) {
+                    current[cy * cols + cx] += (float) Math.sin(source.phaseAt(t));
+                }
+            }
+
+            if (pool == null) {
+                updateRows(1, rows - 1, courant2);
+            } else {
+                for (Band band : bands) {
+                    band.courant2 = courant2;
+                    band.reinitialize();
+                }
+                parallelUpdate.reinitialize();
+                pool.invoke(parallelUpdate);
+            }
+            // The new field was written over the previous one
+            float[] swap = current;
+            current = previous;
+            previous = swap;
+        }
+    }
+
+    // Sum of the squared field over the cells whose centres lie in the rectangle
+    double energyIn(double minX, double minY, double maxX, double maxY) {
+        int cx0 = Math.max(0, (int) Math.ceil(minX / cellSize - 0.5));
+        int cy0 = Math.max(0, (int) Math.ceil(minY / cellSize - 0.5));
+        int cx1 = Math.min(cols - 1, (int) Math.floor(maxX / cellSize - 0.5));
+        int cy1 = Math.min(rows - 1, (int) Math.floor(maxY / cellSize - 0.5));
+        double sum = 0;
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                float u = current[cy * cols + cx];
+                sum += u * u;
+            }
+        }
+        return sum;
+    }
+
+    // Value of the cell under (x, y), or 0 off the grid
+    float valueAt(double x, double y) {
+        int cx = (int) (x / cellSize), cy = (int) (y / cellSize);
+        if (x < 0 || y < 0 || cx >= cols || cy >= rows) {
+            return 0;
+        }
+        return current[cy * cols + cx];
+    }
+
+    // Copies the field into the snapshot's raster
+    void copyField(FrontSnapshot into) {
+        into.ensureFieldCapacity(cols * rows);
+        System.arraycopy(current, 0, into.field, 0, cols * rows);
+        into.fieldCols = cols;
+        into.fieldRows = rows;
+        into.fieldCellSize = (float) cellSize;
+    }
+
+    long fieldHash() {
+        long hash = cols * 31L + rows;
+        for (int i = 0; i < cols * rows; i++) {
+            hash = hash * 31 + Float.floatToIntBits(current[i]);
+        }
+        return hash;
+    }
+
+    // Branch-free over each row so the JIT can vectorise the inner loop. The
+    // border cells stay at zero.
+    private void updateRows(int fromRow, int toRow, float courant2) {
+        float[] u = current, out = previous;
+        float[] ca = this.ca, cb = this.cb, cc = this.cc;
+        int cols = this.cols;
+        for (int y = Math.max(1, fromRow); y < Math.min(rows - 1, toRow); y++) {
+            int row = y * cols;
+            for (int i = row + 1; i < row + cols - 1; i++) {
+                float lap = u[i - 1] + u[i + 1] + u[i - cols] + u[i + cols] - 4f * u[i];
+                out[i] = ca[i] * u[i] - cb[i] * out[i] + cc[i] * courant2 * lap;
+            }
+        }
+    }
+
+    // A wall cell lets through whatever is not reflected, then damps the part
+    // of that which is neither reflected nor transmitted
+    private void rasterise(Wall wall) {
+        double reflection = wall.getReflectionCoeff();
+        double absorption = wall.getAbsorptionCoeff();
+        float pass = (float) (1 - reflection);
+        float damping = pass == 0 ? 0 : (float) (Math.min(1, absorption / pass) * WALL_MAX_DAMPING);
+        int samples = Math.max(1, (int) Math.ceil(wall.length / (cellSize * 0.5)));
+        for (int k = 0; k <= samples; k++) {
+            double t = (double) k / samples;
+            int cx = (int) Math.floor((wall.x1 + t * (wall.x2 - wall.x1)) / cellSize);
+            int cy = (int) Math.floor((wall.y1 + t * (wall.y2 - wall.y1)) / cellSize);
+            if (cx >= 0 && cy >= 0 && cx < cols && cy < rows) {
+                int i = cy * cols + cx;
+                wallPass[i] = Math.min(wallPass[i], pass);
+                wallDamping[i] = Math.max(wallDamping[i], damping);
+            }
+        }
+    }
+
+    private void updateCoefficients() {
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                int i = y * cols + x;
+                int edge = Math.min(Math.min(x, cols - 1 - x), Math.min(y, rows - 1 - y));
+                float sponge = 0;
+                if (edge < SPONGE_CELLS) {
+                    float depth = (SPONGE_CELLS - edge) / (float) SPONGE_CELLS;
+                    sponge = SPONGE_MAX_DAMPING * depth * depth;
+                }
+                float damping = Math.max(sponge, wallDamping[i]);
+                float pass = wallPass[i];
+                ca[i] = pass * 2f / (1f + damping);
+                cb[i] = pass * (1f - damping) / (1f + damping);
+                cc[i] = pass / (1f + damping);
+            }
+        }
+    }
+
+    // A horizontal band of rows for the parallel update
+    private class Band extends RecursiveAction {
+        final int fromRow, toRow;
+        float courant2;
+
+        Band(int fromRow, int toRow) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            updateRows(fromRow, toRow, courant2);
+        }
+    }
+}
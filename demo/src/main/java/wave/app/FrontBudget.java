@@ -0,0 +1,192 @@
+package wave.app;
+
+import java.util.Arrays;
+
+// Keeps the live front count within a global budget so an overloaded scene
+// costs a bounded amount per step instead of growing until the UI stalls.
+// Once the count goes over the budget:
+//   1. fronts at nearly the same spot heading nearly the same way are merged
+//      into one that carries their summed amplitude
+//   2. if that is not enough, the fronts that matter least are culled: low
+//      amplitude, discounted further for every reflection or transmission
+// Both passes keep the order of the survivors, so runs stay deterministic.
+// The scratch tables grow with the population and are then reused.
+class FrontBudget {
+    static final double MERGE_DISTANCE = 1.5;                 // Pixels
+    static final double MERGE_ANGLE = Math.toRadians(2);
+    static final double GENERATION_WEIGHT = 0.5;              // Score factor per generation
+
+    private static final double ANGLE_BUCKETS = 2 * Math.PI / MERGE_ANGLE;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys = new long[0];
+    private int[] slots = new int[0];
+    private float[] scores = new float[0];
+    private float[] select = new float[0];
+
+    int lastMerged, lastCulled;
+
+    // Merges, then culls, until the pool fits in budget
+    void enforce(WaveFrontPool fronts, int budget) {
+        lastMerged = 0;
+        lastCulled = 0;
+        if (budget <= 0 || fronts.size() <= budget) {
+            return;
+        }
+        lastMerged = merge(fronts);
+        if (fronts.size() > budget) {
+            lastCulled = cull(fronts, budget);
+        }
+    }
+
+    // Folds each front into the first earlier one in the same position/angle
+    // bucket; returns how many went
+    int merge(WaveFrontPool fronts) {
+        int count = fronts.size();
+        int capacity = Integer.highestOneBit(Math.max(16, count * 2) - 1) << 1;
+        if (keys.length < capacity) {
+            keys = new long[capacity];
+            slots = new int[capacity];
+        }
+        Arrays.fill(keys, 0, capacity, EMPTY);
+        int mask = capacity - 1;
+
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            long key = key(fronts.x(i), fronts.y(i), fronts.angle(i));
+            int h = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (keys[h] != EMPTY && keys[h] != key) {
+                h = (h + 1) & mask;
+            }
+            if (keys[h] == key) {
+                int into = slots[h];
+                fronts.setAmplitude(into, fronts.amplitude(into) + fronts.amplitude(i));
+                fronts.setGeneration(into, Math.min(fronts.generation(into), fronts.generation(i)));
+                fronts.setAge(into, Math.min(fronts.age(into), fronts.age(i)));
+                fronts.setPath(into, PathCache.UNCACHED); // No longer the traced front
+                continue;
+            }
+            keys[h] = key;
+            slots[h] = live;
+            if (live != i) {
+                fronts.move(i, live);
+            }
+            live++;
+        }
+        fronts.truncate(live);
+        return count - live;
+    }
+
+    // Drops all but the budget best-scoring fronts; returns how many went
+    int cull(WaveFrontPool fronts, int budget) {
+        int count = fronts.size();
+        if (scores.length < count) {
+            scores = new float[count];
+            select = new float[count];
+        }
+        for (int i = 0; i < count; i++) {
+            scores[i] = score(fronts.amplitude(i), fronts.generation(i));
+        }
+        float threshold = kthLargest(scores, select, count, budget);
+
+        // Everything above the threshold stays; ties at it fill up what is left
+        int above = 0;
+        for (int i = 0; i < count; i++) {
+            if (scores[i] > threshold) {
+                above++;
+            }
+        }
+        int ties = budget - above;
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            float s = scores[i];
+            if (s > threshold || (s == threshold && ties-- > 0)) {
+                if (live != i) {
+                    fronts.move(i, live);
+                }
+                live++;
+            }
+        }
+        fronts.truncate(live);
+        return count - live;
+    }
+
+    // The same cut for the event solver, which keeps its fronts in slots
+    int cull(EventSolver events, int budget, double now) {
+        int count = events.size();
+        lastMerged = 0;
+        lastCulled = 0;
+        if (budget <= 0 || count <= budget) {
+            return 0;
+        }
+        if (scores.length < count) {
+            scores = new float[count];
+            select = new float[count];
+        }
+        for (int h = 0; h < count; h++) {
+            int s = events.heap[h];
+            scores[h] = score(events.drawAmplitude(s, now), events.generation[s]);
+        }
+        float threshold = kthLargest(scores, select, count, budget);
+        int above = 0;
+        for (int h = 0; h < count; h++) {
+            if (scores[h] > threshold) {
+                above++;
+            }
+        }
+        lastCulled = events.retain(scores, threshold, budget - above);
+        return lastCulled;
+    }
+
+    static float score(double amplitude, int generation) {
+        return (float) (amplitude * Math.pow(GENERATION_WEIGHT, generation));
+    }
+
+    private static long key(double x, double y, double angle) {
+        long qx = (long) Math.floor(x / MERGE_DISTANCE) & 0x1FFFFF;
+        long qy = (long) Math.floor(y / MERGE_DISTANCE) & 0x1FFFFF;
+        double turn = angle % (2 * Math.PI);
+        if (turn < 0) {
+            turn += 2 * Math.PI;
+        }
+        long qa = (long) (turn / MERGE_ANGLE) % (long) Math.ceil(ANGLE_BUCKETS);
+        return qx << 42 | qy << 21 | qa;
+    }
+
+    // k-th largest of values[0, count), 1-based, using work as scratch.
+    // Quickselect with a median-of-three pivot, so O(count) on average.
+    static float kthLargest(float[] values, float[] work, int count, int k) {
+        System.arraycopy(values, 0, work, 0, count);
+        int target = count - k; // Index in ascending order
+        int lo = 0, hi = count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            float a = work[lo], b = work[mid], c = work[hi];
+            float pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (work[i] < pivot) {
+                    i++;
+                }
+                while (work[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    float t = work[i];
+                    work[i] = work[j];
+                    work[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (target <= j) {
+                hi = j;
+            } else if (target >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+        return work[target];
+    }
+}
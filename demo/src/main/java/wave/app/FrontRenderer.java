@@ -0,0 +1,432 @@
+package wave.app;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Set;
+
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+// Draws the visible part of the world in one pass into a pixel buffer that is
+// shown through a single ImageView, instead of one node per front or wall.
+// Fronts and walls outside the viewport are skipped, and zoomed out the fronts
+// become a density raster, so the cost follows what is on screen rather than
+// the size of the scene. Labels and source dots stay as ordinary nodes on top.
+public class FrontRenderer {
+    private static final double RING_RADIUS = 3;
+    private static final double RING_WIDTH = 1.5;
+    private static final Color[] GENERATION_COLORS = { Color.CYAN, Color.YELLOW, Color.ORANGE, Color.RED };
+
+    // Premultiplied ARGB for each generation at each of 256 amplitude levels
+    private static final int[][] COLOR_RAMPS = new int[GENERATION_COLORS.length][];
+    static {
+        for (int g = 0; g < GENERATION_COLORS.length; g++) {
+            COLOR_RAMPS[g] = ramp(GENERATION_COLORS[g]);
+        }
+    }
+
+    // Field values in the wave-equation mode: positive cyan, negative orange,
+    // opacity by magnitude up to FIELD_SCALE
+    private static final float FIELD_SCALE = 0.5f;
+    private static final int[] FIELD_POSITIVE = ramp(Color.CYAN);
+    private static final int[] FIELD_NEGATIVE = ramp(Color.ORANGE);
+
+    // Heatmaps: intensity on a dark red to yellow to white ramp over the top
+    // HEAT_RANGE_DB below the peak, signed sums like the field, linearly
+    private static final double HEAT_RANGE_DB = 40;
+    private static final int[] HEAT_RAMP = heatRamp();
+
+    // Pixel offsets covered by a ring stroke around the front position
+    private static final int[] RING_DX, RING_DY;
+    static {
+        int reach = (int) Math.ceil(RING_RADIUS + RING_WIDTH / 2);
+        int[] dx = new int[(2 * reach + 1) * (2 * reach + 1)];
+        int[] dy = new int[dx.length];
+        int n = 0;
+        for (int y = -reach; y <= reach; y++) {
+            for (int x = -reach; x <= reach; x++) {
+                double d = Math.sqrt(x * x + y * y);
+                if (Math.abs(d - RING_RADIUS) <= RING_WIDTH / 2) {
+                    dx[n] = x;
+                    dy[n] = y;
+                    n++;
+                }
+            }
+        }
+        RING_DX = Arrays.copyOf(dx, n);
+        RING_DY = Arrays.copyOf(dy, n);
+    }
+
+    // Below this zoom, or with more fronts than this fraction of the screen's
+    // pixels, fronts are summed into a density raster instead of drawn as rings
+    static final double DENSITY_SCALE = 0.5;
+    private static final double DENSITY_FRONTS_PER_PIXEL = 0.25;
+    private static final int[] DENSITY_RAMP = ramp(Color.CYAN);
+
+    private static final double WALL_WIDTH = 3; // Screen pixels at 1x
+
+    private final ImageView view = new ImageView();
+    private WritableImage image;
+    private int[] pixels = new int[0];
+    private int[] heatColors = new int[0];
+    private float[] density = new float[0];
+    private int[] cellCols = new int[0], cellRows = new int[0]; // Raster cell under each pixel column/row
+    private int width, height;
+    private final double[] clipped = new double[4];
+    private double clipT0, clipT1;
+
+    // Walls, kept here so they can be culled and drawn with the fronts
+    private double[] wallX1 = new double[0], wallY1 = new double[0];
+    private double[] wallX2 = new double[0], wallY2 = new double[0];
+    private int[] wallColors = new int[0];
+    private Wall[] walls = new Wall[0];
+    private int wallCount = 0;
+
+    FrontRenderer() {
+        // Clicks and drags go to the map pane underneath
+        view.setMouseTransparent(true);
+    }
+
+    public ImageView getView() {
+        return view;
+    }
+
+    void addWall(Wall wall) {
+        if (wallCount == wallX1.length) {
+            int capacity = Math.max(64, wallCount * 2);
+            wallX1 = Arrays.copyOf(wallX1, capacity);
+            wallY1 = Arrays.copyOf(wallY1, capacity);
+            wallX2 = Arrays.copyOf(wallX2, capacity);
+            wallY2 = Arrays.copyOf(wallY2, capacity);
+            wallColors = Arrays.copyOf(wallColors, capacity);
+            walls = Arrays.copyOf(walls, capacity);
+        }
+        walls[wallCount] = wall;
+        wallX1[wallCount] = wall.x1;
+        wallY1[wallCount] = wall.y1;
+        wallX2[wallCount] = wall.x2;
+        wallY2[wallCount] = wall.y2;
+        Color color = Color.web(wall.type.getColorName());
+        wallColors[wallCount] = 0xff000000 | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8 | (int) Math.round(color.getBlue() * 255);
+        wallCount++;
+    }
+
+    // Closes up the gaps in one pass, however many walls go
+    void removeWalls(Set<Wall> removed) {
+        int kept = 0;
+        for (int w = 0; w < wallCount; w++) {
+            if (removed.contains(walls[w])) {
+                continue;
+            }
+            wallX1[kept] = wallX1[w];
+            wallY1[kept] = wallY1[w];
+            wallX2[kept] = wallX2[w];
+            wallY2[kept] = wallY2[w];
+            wallColors[kept] = wallColors[w];
+            walls[kept] = walls[w];
+            kept++;
+        }
+        Arrays.fill(walls, kept, wallCount, null);
+        wallCount = kept;
+    }
+
+    void clearWalls() {
+        Arrays.fill(walls, 0, wallCount, null);
+        wallCount = 0;
+    }
+
+    // World bounds of the walls as { minX, minY, maxX, maxY }, or null
+    double[] wallBounds() {
+        if (wallCount == 0) {
+            return null;
+        }
+        double[] bounds = { Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        for (int w = 0; w < wallCount; w++) {
+            bounds[0] = Math.min(bounds[0], Math.min(wallX1[w], wallX2[w]));
+            bounds[1] = Math.min(bounds[1], Math.min(wallY1[w], wallY2[w]));
+            bounds[2] = Math.max(bounds[2], Math.max(wallX1[w], wallX2[w]));
+            bounds[3] = Math.max(bounds[3], Math.max(wallY1[w], wallY2[w]));
+        }
+        return bounds;
+    }
+
+    public void render(FrontSnapshot snapshot, Viewport viewport) {
+        resize(viewport.width, viewport.height);
+        if (snapshot.fieldCols > 0) {
+            drawField(snapshot, viewport);
+        } else {
+            Arrays.fill(pixels, 0);
+        }
+        if (snapshot.heatCols > 0) {
+            drawHeat(snapshot, viewport);
+        }
+        if (viewport.scale < DENSITY_SCALE || snapshot.count > width * height * DENSITY_FRONTS_PER_PIXEL) {
+            drawDensity(snapshot, viewport);
+        } else {
+            drawRings(snapshot, viewport);
+        }
+        drawWalls(viewport);
+
+        image.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbPreInstance(), IntBuffer.wrap(pixels), width);
+    }
+
+    private void drawRings(FrontSnapshot snapshot, Viewport viewport) {
+        int[] ringDx = RING_DX, ringDy = RING_DY;
+        float ox = (float) viewport.originX, oy = (float) viewport.originY, scale = (float) viewport.scale;
+        for (int i = 0; i < snapshot.count; i++) {
+            int cx = Math.round((snapshot.x[i] - ox) * scale);
+            int cy = Math.round((snapshot.y[i] - oy) * scale);
+            if (cx < -4 || cy < -4 || cx >= width + 4 || cy >= height + 4) {
+                continue;
+            }
+            int level = (int) (Math.min(1f, Math.max(0f, snapshot.amplitude[i])) * 255f + 0.5f);
+            if (level == 0) {
+                continue;
+            }
+            int color = COLOR_RAMPS[Math.min(snapshot.generation[i], COLOR_RAMPS.length - 1)][level];
+            for (int k = 0; k < ringDx.length; k++) {
+                int px = cx + ringDx[k];
+                int py = cy + ringDy[k];
+                if (px >= 0 && py >= 0 && px < width && py < height) {
+                    int p = py * width + px;
+                    pixels[p] = over(color, pixels[p]);
+                }
+            }
+        }
+    }
+
+    // Sums amplitude per screen pixel, then shades each pixel by the log of
+    // its sum against the densest one: one pass over the fronts, one over the
+    // pixels, however many fronts land on each
+    private void drawDensity(FrontSnapshot snapshot, Viewport viewport) {
+        if (density.length < width * height) {
+            density = new float[width * height];
+        }
+        Arrays.fill(density, 0, width * height, 0f);
+        float ox = (float) viewport.originX, oy = (float) viewport.originY, scale = (float) viewport.scale;
+        float peak = 0;
+        for (int i = 0; i < snapshot.count; i++) {
+            int px = (int) ((snapshot.x[i] - ox) * scale);
+            int py = (int) ((snapshot.y[i] - oy) * scale);
+            if (px < 0 || py < 0 || px >= width || py >= height) {
+                continue;
+            }
+            float d = density[py * width + px] += snapshot.amplitude[i];
+            if (d > peak) {
+                peak = d;
+            }
+        }
+        if (peak == 0) {
+            return;
+        }
+        float norm = (float) (255 / Math.log1p(peak));
+        for (int p = 0; p < width * height; p++) {
+            float d = density[p];
+            if (d > 0) {
+                int level = Math.min(255, 1 + (int) (Math.log1p(d) * norm));
+                pixels[p] = over(DENSITY_RAMP[level], pixels[p]);
+            }
+        }
+    }
+
+    // Culls walls against the visible world area, clips the rest to the screen
+    // and steps along each with a square brush
+    private void drawWalls(Viewport viewport) {
+        double minX = viewport.minX(), minY = viewport.minY(), maxX = viewport.maxX(), maxY = viewport.maxY();
+        double scale = viewport.scale;
+        int brush = (int) Math.max(1, Math.round(WALL_WIDTH * Math.min(1, scale)));
+        int half = brush / 2;
+        for (int w = 0; w < wallCount; w++) {
+            double x1 = wallX1[w], y1 = wallY1[w], x2 = wallX2[w], y2 = wallY2[w];
+            if (Math.max(x1, x2) < minX || Math.min(x1, x2) > maxX
+                    || Math.max(y1, y2) < minY || Math.min(y1, y2) > maxY) {
+                continue;
+            }
+            if (!clip(viewport.toScreenX(x1), viewport.toScreenY(y1),
+                    viewport.toScreenX(x2), viewport.toScreenY(y2), clipped)) {
+                continue;
+            }
+            double sx = clipped[0], sy = clipped[1];
+            double dx = clipped[2] - sx, dy = clipped[3] - sy;
+            int steps = (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)));
+            int color = wallColors[w];
+            for (int k = 0; k <= steps; k++) {
+                double t = steps == 0 ? 0 : (double) k / steps;
+                int px = (int) (sx + dx * t) - half;
+                int py = (int) (sy + dy * t) - half;
+                for (int by = Math.max(0, py); by < Math.min(height, py + brush); by++) {
+                    int row = by * width;
+                    for (int bx = Math.max(0, px); bx < Math.min(width, px + brush); bx++) {
+                        pixels[row + bx] = color;
+                    }
+                }
+            }
+        }
+    }
+
+    // Liang-Barsky clip of a screen-space segment to the image; false when
+    // nothing is left
+    private boolean clip(double x1, double y1, double x2, double y2, double[] out) {
+        double dx = x2 - x1, dy = y2 - y1;
+        clipT0 = 0;
+        clipT1 = 1;
+        if (!clipEdge(-dx, x1 + 1) || !clipEdge(dx, width - x1)
+                || !clipEdge(-dy, y1 + 1) || !clipEdge(dy, height - y1)) {
+            return false;
+        }
+        out[0] = x1 + clipT0 * dx;
+        out[1] = y1 + clipT0 * dy;
+        out[2] = x1 + clipT1 * dx;
+        out[3] = y1 + clipT1 * dy;
+        return true;
+    }
+
+    private boolean clipEdge(double p, double q) {
+        if (p == 0) {
+            return q >= 0;
+        }
+        double r = q / p;
+        if (p < 0) {
+            clipT0 = Math.max(clipT0, r);
+        } else {
+            clipT1 = Math.min(clipT1, r);
+        }
+        return clipT0 <= clipT1;
+    }
+
+    // Works out which raster cell sits under each pixel column and row, -1
+    // off the raster, so the per-pixel loops below are two array lookups
+    private void mapCells(Viewport viewport, float cellSize, int cols, int rows) {
+        if (cellCols.length < width) {
+            cellCols = new int[width];
+        }
+        if (cellRows.length < height) {
+            cellRows = new int[height];
+        }
+        for (int px = 0; px < width; px++) {
+            int c = (int) Math.floor(viewport.toWorldX(px + 0.5) / cellSize);
+            cellCols[px] = c >= 0 && c < cols ? c : -1;
+        }
+        for (int py = 0; py < height; py++) {
+            int r = (int) Math.floor(viewport.toWorldY(py + 0.5) / cellSize);
+            cellRows[py] = r >= 0 && r < rows ? r : -1;
+        }
+    }
+
+    // Nearest-cell lookup for every pixel; the raster is at most a few hundred
+    // cells wide, so this is a single cheap pass
+    private void drawField(FrontSnapshot snapshot, Viewport viewport) {
+        float[] field = snapshot.field;
+        int cols = snapshot.fieldCols, rows = snapshot.fieldRows;
+        mapCells(viewport, snapshot.fieldCellSize, cols, rows);
+        for (int py = 0; py < height; py++) {
+            int cy = cellRows[py];
+            int out = py * width;
+            if (cy < 0) {
+                Arrays.fill(pixels, out, out + width, 0);
+                continue;
+            }
+            int row = cy * cols;
+            for (int px = 0; px < width; px++) {
+                int cx = cellCols[px];
+                if (cx < 0) {
+                    pixels[out + px] = 0;
+                    continue;
+                }
+                float v = field[row + cx];
+                int level = (int) (Math.min(1f, Math.abs(v) / FIELD_SCALE) * 255f);
+                pixels[out + px] = v >= 0 ? FIELD_POSITIVE[level] : FIELD_NEGATIVE[level];
+            }
+        }
+    }
+
+    // Colours each cell once, then looks them up per pixel like the field
+    private void drawHeat(FrontSnapshot snapshot, Viewport viewport) {
+        int cols = snapshot.heatCols, rows = snapshot.heatRows;
+        int cells = cols * rows;
+        if (heatColors.length < cells) {
+            heatColors = new int[cells];
+        }
+        float[] heat = snapshot.heat;
+        float peak = snapshot.heatPeak;
+        for (int i = 0; i < cells; i++) {
+            float v = heat[i];
+            if (v == 0 || peak == 0) {
+                heatColors[i] = 0;
+            } else if (snapshot.heatSigned) {
+                int level = (int) (Math.min(1f, Math.abs(v) / peak) * 255f);
+                heatColors[i] = v > 0 ? FIELD_POSITIVE[level] : FIELD_NEGATIVE[level];
+            } else {
+                double db = 10 * Math.log10(v / peak);
+                heatColors[i] = HEAT_RAMP[(int) (Math.max(0, 1 + db / HEAT_RANGE_DB) * 255)];
+            }
+        }
+
+        mapCells(viewport, snapshot.heatCellSize, cols, rows);
+        for (int py = 0; py < height; py++) {
+            int cy = cellRows[py];
+            if (cy < 0) {
+                continue;
+            }
+            int row = cy * cols;
+            int out = py * width;
+            for (int px = 0; px < width; px++) {
+                int cx = cellCols[px];
+                int color = cx < 0 ? 0 : heatColors[row + cx];
+                if (color != 0) {
+                    pixels[out + px] = over(color, pixels[out + px]);
+                }
+            }
+        }
+    }
+
+    private static int[] heatRamp() {
+        int[] ramp = new int[256];
+        for (int level = 1; level < 256; level++) {
+            double t = level / 255.0;
+            double r = Math.min(1, t * 3), g = Math.min(1, Math.max(0, t * 3 - 1)), b = Math.max(0, t * 3 - 2);
+            int a = (int) Math.round(255 * (0.25 + 0.75 * t));
+            ramp[level] = a << 24 | (int) Math.round(r * a) << 16 | (int) Math.round(g * a) << 8 | (int) Math.round(b * a);
+        }
+        return ramp;
+    }
+
+    private static int[] ramp(Color color) {
+        int[] ramp = new int[256];
+        for (int a = 0; a < 256; a++) {
+            int r = (int) Math.round(color.getRed() * a);
+            int g = (int) Math.round(color.getGreen() * a);
+            int b = (int) Math.round(color.getBlue() * a);
+            ramp[a] = a << 24 | r << 16 | g << 8 | b;
+        }
+        return ramp;
+    }
+
+    private void resize(int width, int height) {
+        if (image != null && width == this.width && height == this.height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        pixels = new int[width * height];
+        image = new WritableImage(width, height);
+        view.setImage(image);
+    }
+
+    // Premultiplied source-over blend
+    private static int over(int src, int dst) {
+        int inv = 255 - (src >>> 24);
+        if (inv == 0 || dst == 0) {
+            return src;
+        }
+        int a = (src >>> 24) + ((dst >>> 24) * inv + 127) / 255;
+        int r = ((src >> 16) & 0xff) + (((dst >> 16) & 0xff) * inv + 127) / 255;
+        int g = ((src >> 8) & 0xff) + (((dst >> 8) & 0xff) * inv + 127) / 255;
+        int b = (src & 0xff) + ((dst & 0xff) * inv + 127) / 255;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+}
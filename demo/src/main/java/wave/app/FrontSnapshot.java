@@ -0,0 +1,61 @@
+package wave.app;
+
+import java.util.Arrays;
+
+// Point-in-time copy of the live fronts, holding just what is needed to draw
+// them. Single precision is plenty for pixels and halves the copy cost.
+public class FrontSnapshot {
+    float[] x = new float[0];
+    float[] y = new float[0];
+    float[] amplitude = new float[0];
+    int[] generation = new int[0];
+    int count = 0;
+    long stepCount = 0;
+    double time = 0;
+
+    // Field raster in the grid-based mode; fieldCols == 0 when there is none
+    float[] field = new float[0];
+    int fieldCols = 0, fieldRows = 0;
+    float fieldCellSize = 1;
+
+    // Accumulated heatmap, when one is being collected; heatCols == 0 otherwise
+    float[] heat = new float[0];
+    int heatCols = 0, heatRows = 0;
+    float heatCellSize = 1;
+    float heatPeak = 0;
+    boolean heatSigned = false;
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > x.length) {
+            int grown = Math.max(capacity, x.length + (x.length >> 1));
+            x = Arrays.copyOf(x, grown);
+            y = Arrays.copyOf(y, grown);
+            amplitude = Arrays.copyOf(amplitude, grown);
+            generation = Arrays.copyOf(generation, grown);
+        }
+    }
+
+    void ensureFieldCapacity(int cells) {
+        if (cells > field.length) {
+            field = new float[cells];
+        }
+    }
+
+    void ensureHeatCapacity(int cells) {
+        if (cells > heat.length) {
+            heat = new float[cells];
+        }
+    }
+}
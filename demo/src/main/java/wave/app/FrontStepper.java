@@ -0,0 +1,181 @@
+package wave.app;
+
+import java.util.concurrent.RecursiveAction;
+
+// Advances one contiguous range [from, to) of the front pool by a step.
+// Survivors are compacted towards the start of the range, and fronts spawned
+// by collisions go into this stepper's own buffer instead of the shared pool,
+// so several steppers can work on disjoint ranges at the same time. The engine
+// merges the ranges and buffers back in range order, which makes a parallel
+// step produce exactly the same pool as a serial one.
+//
+// Fronts on a PathCache node already know at which step they hit which wall,
+// and skip the wall grid until then. Collisions only spawn the fronts that
+// SpawnCulling expects to contribute; the rest are counted and dropped.
+class FrontStepper extends RecursiveAction {
+    final WaveFrontPool spawned;
+    final int[] collisionsByType = new int[WallType.values().length]; // Cleared by the engine
+    int prunedFaint, prunedOutside; // Spawns culled; cleared by the engine
+    private final WallGrid.Hit hit = new WallGrid.Hit();
+
+    // Set by the engine before each step
+    WaveFrontPool fronts;
+    WallGrid wallGrid;
+    double distance;
+    double decay;
+    double ageLimit;
+    int[] reflectLimit, transmitLimit; // Spawn caps by wall type, see WaveEngine
+    PathCache paths; // Only read during a step
+    SpawnCulling culling; // Null when off
+    int from, to;
+
+    // Result: the survivors now occupy [from, from + live)
+    int live;
+
+    FrontStepper(FrontStorage storage) {
+        spawned = storage.newPool(256);
+    }
+
+    @Override
+    protected void compute() {
+        advance();
+    }
+
+    void advance() {
+        WaveFrontPool fronts = this.fronts;
+        int live = from;
+        for (int i = from; i < to; i++) {
+            // Store previous position for collision detection
+            double prevX = fronts.x(i);
+            double prevY = fronts.y(i);
+
+            // Move wave
+            double angle = fronts.angle(i);
+            double x = prevX + Math.cos(angle) * distance;
+            double y = prevY + Math.sin(angle) * distance;
+            fronts.setX(i, x);
+            fronts.setY(i, y);
+            int age = fronts.age(i) + 1;
+            fronts.setAge(i, age);
+            double amplitude = fronts.amplitude(i) * decay; // Natural decay
+            fronts.setAmplitude(i, amplitude);
+
+            // Check wall collisions: count down a traced path, or query only
+            // the walls in the cells crossed
+            boolean collided;
+            Wall wall;
+            int node = fronts.path(i);
+            if (node != PathCache.UNCACHED) {
+                int hitIn = fronts.hitIn(i) - 1;
+                fronts.setHitIn(i, hitIn);
+                wall = hitIn == 0 ? paths.wall[node] : null;
+                collided = wall != null;
+                if (hitIn == 0 && !collided) {
+                    fronts.setPath(i, PathCache.UNCACHED); // Traced no further; outlived its trace
+                }
+            } else {
+                collided = wallGrid.firstHit(prevX, prevY, x, y, hit);
+                wall = hit.wall;
+            }
+            if (collided) {
+                handleCollision(i, wall);
+            }
+
+            // Keep unless collided or too old
+            if (!collided && age <= ageLimit && amplitude >= WaveEngine.MIN_AMPLITUDE) {
+                if (live != i) {
+                    fronts.move(i, live);
+                }
+                live++;
+            }
+        }
+        this.live = live - from;
+    }
+
+    private void handleCollision(int wave, Wall wall) {
+        collisionsByType[wall.type.ordinal()]++;
+        double waveX = fronts.x(wave);
+        double waveY = fronts.y(wave);
+        double waveAngle = fronts.angle(wave);
+        double waveAmplitude = fronts.amplitude(wave);
+        int waveGeneration = fronts.generation(wave);
+        double wavePhase = fronts.phase(wave);
+        double reflectAngle = reflectAngle(waveAngle, wall);
+        int node = fronts.path(wave);
+
+        // Use wall-specific coefficients, as amplitude factors
+        Material material = wall.material;
+        double wallReflection = material.reflectedAmplitude;
+        double wallTransmission = material.transmittedAmplitude;
+        int type = wall.type.ordinal();
+
+        // Create reflected wave
+        if (wallReflection > 0 && waveGeneration < reflectLimit[type]
+                && worthSpawning(waveX, waveY, reflectAngle, waveAmplitude * wallReflection)) {
+            int f = spawned.add(waveX, waveY,
+                    reflectAngle,
+                    waveAmplitude * wallReflection,
+                    waveGeneration + 1,
+                    wavePhase);
+            if (node != PathCache.UNCACHED) {
+                follow(f, paths.child(node, true));
+            }
+        }
+
+        // Create transmitted wave
+        if (wallTransmission > 0 && waveGeneration < transmitLimit[type]
+                && worthSpawning(waveX, waveY, waveAngle, waveAmplitude * wallTransmission)) {
+            int f = spawned.add(waveX, waveY,
+                    waveAngle,
+                    waveAmplitude * wallTransmission,
+                    waveGeneration + 1,
+                    wavePhase);
+            if (node != PathCache.UNCACHED) {
+                follow(f, paths.child(node, false));
+            }
+        }
+    }
+
+    // Whether a front spawned here could still show; counts the ones that could not
+    private boolean worthSpawning(double x, double y, double angle, double amplitude) {
+        if (culling == null) {
+            return true;
+        }
+        if (culling.faint(amplitude)) {
+            prunedFaint++;
+            return false;
+        }
+        if (culling.outside(x, y, angle, amplitude)) {
+            prunedOutside++;
+            return false;
+        }
+        return true;
+    }
+
+    private void follow(int f, int node) {
+        spawned.setPath(f, node);
+        if (node != PathCache.UNCACHED) {
+            spawned.setHitIn(f, paths.steps[node]);
+        }
+    }
+
+    // Direction of a front with the given heading after bouncing off the wall;
+    // shared with PathCache, which has to trace exactly the same angles
+    static double reflectAngle(double angle, Wall wall) {
+        // Calculate direction vector
+        double dx = Math.cos(angle);
+        double dy = Math.sin(angle);
+
+        // Calculate reflection angle
+        double nx = wall.normalX;
+        double ny = wall.normalY;
+
+        // Dot product
+        double dot = dx * nx + dy * ny;
+
+        // Reflection vector: R = V - 2*(V·N)*N
+        double reflectX = dx - 2 * dot * nx;
+        double reflectY = dy - 2 * dot * ny;
+        return Math.atan2(reflectY, reflectX);
+    }
+}
@@ -0,0 +1,208 @@
+package wave.app;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Runs the sample scene without a display, as fast as the CPU allows, and
+// reports step timing. Needs nothing from JavaFX on the class path:
+//   java -cp target/classes wave.app.HeadlessMain --steps 5000 --sources 10 --threads 8
+// With --verify the same run is repeated serially and the final states compared.
+// --scene runs a scene file instead of the sample layout, and --save-scene
+// writes the scene out (binary, or text for a .txt name), e.g. to convert one.
+// --record streams the run to a recording that the UI can replay, and reports
+// what that costs the step thread.
+// --budget caps the live fronts, merging and culling them under overload.
+// --heatmap collects an intensity (or, with --heatmap-mode signed, a signed)
+// map over the run and writes it as CSV. --attenuation (nepers per pixel)
+// and --max-generation override the engine's decay and generation cap.
+// --no-path-cache makes the ray mode query the wall grid for every front,
+// e.g. to check that the traced paths give the same result. --no-spawn-culling
+// spawns every front a collision allows, even ones that cannot contribute.
+// --jmx publishes the engine metrics over JMX and as JFR events (for
+// -XX:StartFlightRecording); off by default, as setting that up takes most
+// of a second before the first step.
+public class HeadlessMain {
+    public static void main(String[] args) throws IOException {
+        int steps = 1000;
+        int extraSources = 0;
+        int threads = 1;
+        boolean verify = false;
+        PhysicsMode mode = PhysicsMode.RAYS;
+        double dt = WaveEngine.REFERENCE_DT;
+        Path scene = null;
+        Path saveScene = null;
+        Path record = null;
+        int budget = 0;
+        Path heatmap = null;
+        HeatmapMode heatmapMode = HeatmapMode.INTENSITY;
+        double attenuation = WaveEngine.DEFAULT_ATTENUATION;
+        int maxGeneration = WaveEngine.MAX_GENERATION;
+        boolean pathCache = true;
+        boolean spawnCulling = true;
+        boolean jmx = false;
+        FrontStorage storage = FrontStorage.DEFAULT;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--steps" -> steps = Integer.parseInt(args[++i]);
+                case "--sources" -> extraSources = Integer.parseInt(args[++i]);
+                case "--dt" -> dt = Double.parseDouble(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--verify" -> verify = true;
+                case "--mode" -> mode = PhysicsMode.valueOf(args[++i].toUpperCase());
+                case "--scene" -> scene = Path.of(args[++i]);
+                case "--save-scene" -> saveScene = Path.of(args[++i]);
+                case "--record" -> record = Path.of(args[++i]);
+                case "--budget" -> budget = Integer.parseInt(args[++i]);
+                case "--heatmap" -> heatmap = Path.of(args[++i]);
+                case "--heatmap-mode" -> heatmapMode = HeatmapMode.valueOf(args[++i].toUpperCase());
+                case "--attenuation" -> attenuation = Double.parseDouble(args[++i]);
+                case "--max-generation" -> maxGeneration = Integer.parseInt(args[++i]);
+                case "--no-path-cache" -> pathCache = false;
+                case "--no-spawn-culling" -> spawnCulling = false;
+                case "--jmx" -> jmx = true;
+                case "--fronts" -> storage = FrontStorage.parse(args[++i]);
+                default -> {
+                    System.err.println("Usage: HeadlessMain [--steps N] [--sources N] [--dt SECONDS]"
+                            + " [--threads N] [--verify] [--mode rays|events|arcs|fdtd]"
+                            + " [--scene FILE] [--save-scene FILE] [--record FILE] [--budget FRONTS]"
+                            + " [--heatmap FILE] [--heatmap-mode intensity|signed]"
+                            + " [--attenuation NEPERS_PER_PIXEL] [--max-generation N] [--no-path-cache]"
+                            + " [--no-spawn-culling] [--jmx] [--fronts heap|offheap|offheap32]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        long loadStart = System.nanoTime();
+        if (!storage.isAvailable()) {
+            System.err.println(storage + " front storage needs --enable-preview; using the heap");
+        }
+        WaveEngine engine = createEngine(scene, extraSources, storage);
+        if (scene != null) {
+            System.out.printf("scene load:     %.1f ms (%s)%n", (System.nanoTime() - loadStart) / 1e6, scene);
+        }
+        if (saveScene != null) {
+            SceneFile.save(saveScene, engine);
+        }
+        engine.setParallelism(threads);
+        engine.setFrontBudget(budget);
+        engine.setAttenuation(attenuation);
+        engine.setMaxGeneration(maxGeneration);
+        engine.setPathCaching(pathCache);
+        engine.setSpawnCulling(spawnCulling);
+        if (jmx) {
+            // Visible to JMX clients and captured by -XX:StartFlightRecording
+            engine.getMetrics().register();
+        }
+        engine.setMode(mode);
+        if (heatmap != null) {
+            engine.setHeatmapMode(heatmapMode);
+        }
+        Recorder recorder = record == null ? null : new Recorder(record, engine);
+
+        int peakFronts = 0;
+        long spawned = 0, prunedFaint = 0, prunedOutside = 0;
+        long slowest = 0;
+        // What recording costs the step thread, in CPU time: wall time would
+        // also count the writer whenever it shares a core with the steps
+        ThreadMXBean cpu = ManagementFactory.getThreadMXBean();
+        long stepCpu = 0, recordCpu = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            long stepStart = System.nanoTime();
+            long cpuStart = recorder != null ? cpu.getCurrentThreadCpuTime() : 0;
+            engine.step(dt);
+            if (recorder != null) {
+                long cpuStepped = cpu.getCurrentThreadCpuTime();
+                recorder.record(engine);
+                long cpuRecorded = cpu.getCurrentThreadCpuTime();
+                stepCpu += cpuStepped - cpuStart;
+                recordCpu += cpuRecorded - cpuStepped;
+            }
+            slowest = Math.max(slowest, System.nanoTime() - stepStart);
+            peakFronts = Math.max(peakFronts, engine.frontCount());
+            EngineMetrics metrics = engine.getMetrics();
+            spawned += metrics.getSpawnedPerStep();
+            prunedFaint += metrics.getPrunedFaintPerStep();
+            prunedOutside += metrics.getPrunedOutsidePerStep();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (recorder != null) {
+            recorder.close();
+        }
+        if (heatmap != null) {
+            engine.exportHeatmap(heatmap);
+        }
+
+        System.out.printf("steps:          %d (dt %.5f s, %.1f s simulated)%n", steps, dt, engine.getTime());
+        System.out.printf("sources/walls:  %d / %d (%s, %s collision kernel)%n", engine.getSources().size(),
+                engine.getWalls().size(), engine.getMode().getDisplayName(), SegmentKernel.DEFAULT.name());
+        System.out.printf("fronts:         %d final, %d peak (%s)%n", engine.frontCount(), peakFronts,
+                engine.getFrontStorage());
+        if (budget > 0) {
+            System.out.printf("front budget:   %d (last step %d merged, %d culled)%n", budget,
+                    engine.getMetrics().getMergedPerStep(), engine.getMetrics().getCulledPerStep());
+        }
+        if (spawnCulling && (engine.getMode() == PhysicsMode.RAYS || engine.getMode() == PhysicsMode.EVENTS)) {
+            System.out.printf("spawn culling:  %d faint, %d outside (%.1f%% of spawns pruned)%n",
+                    prunedFaint, prunedOutside,
+                    100.0 * (prunedFaint + prunedOutside) / Math.max(1, spawned + prunedFaint + prunedOutside));
+        }
+        if (engine.getMode() == PhysicsMode.RAYS && pathCache) {
+            System.out.printf("path cache:     %d nodes%n", engine.pathCacheSize());
+        }
+        System.out.printf("wall time:      %.1f ms%n", elapsed / 1e6);
+        System.out.printf("mean step:      %.1f us (slowest %.1f us)%n", elapsed / 1e3 / steps, slowest / 1e3);
+        EngineMetrics metrics = engine.getMetrics();
+        System.out.printf("step p50/p99:   %.1f / %.1f us (bucket upper bounds)%n",
+                metrics.getStepP50Micros(), metrics.getStepP99Micros());
+        System.out.printf("throughput:     %.0f steps/s (%.1fx real time, %d threads)%n",
+                steps / (elapsed / 1e9), engine.getTime() / (elapsed / 1e9), engine.getParallelism());
+        if (recorder != null) {
+            System.out.printf("recording:      %d frames, %.1f MB, %d stalls (%s)%n", recorder.getFrames(),
+                    recorder.getBytesWritten() / 1e6, recorder.getStalls(), record);
+            if (engine.getParallelism() == 1) {
+                System.out.printf("record():       %.1f us CPU per step (%.1f%% of the step's)%n",
+                        recordCpu / 1e3 / steps, 100.0 * recordCpu / stepCpu);
+            } else {
+                // The step's own CPU time is spread over the worker threads
+                System.out.printf("record():       %.1f us CPU per step%n", recordCpu / 1e3 / steps);
+            }
+        }
+
+        if (verify) {
+            WaveEngine serial = createEngine(scene, extraSources, storage);
+            serial.setFrontBudget(budget);
+            serial.setAttenuation(attenuation);
+            serial.setMaxGeneration(maxGeneration);
+            serial.setPathCaching(pathCache);
+            serial.setSpawnCulling(spawnCulling);
+            serial.setMode(mode);
+            for (int i = 0; i < steps; i++) {
+                serial.step(dt);
+            }
+            boolean same = serial.stateHash() == engine.stateHash();
+            System.out.printf("serial check:   %s (%016x)%n", same ? "identical" : "DIFFERS", serial.stateHash());
+            if (!same) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static WaveEngine createEngine(Path scene, int extraSources, FrontStorage storage) throws IOException {
+        WaveEngine engine = new WaveEngine(storage);
+        if (scene == null) {
+            SampleScene.build(engine);
+        } else {
+            SceneFile.load(scene, engine);
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < extraSources; i++) {
+            engine.addSource(100 + random.nextDouble() * 600, 100 + random.nextDouble() * 400);
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,121 @@
+package wave.app;
+
+import java.util.Arrays;
+
+// Front columns in plain Java arrays; the default storage
+final class HeapFrontPool extends WaveFrontPool {
+    private double[] x, y;
+    private double[] angle;
+    private double[] amplitude;
+    private int[] age;
+    private int[] generation;
+    private double[] phase;
+    private int[] path;
+    private int[] hitIn;
+
+    HeapFrontPool(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        x = new double[capacity];
+        y = new double[capacity];
+        angle = new double[capacity];
+        amplitude = new double[capacity];
+        age = new int[capacity];
+        generation = new int[capacity];
+        phase = new double[capacity];
+        path = new int[capacity];
+        hitIn = new int[capacity];
+    }
+
+    @Override
+    public int capacity() {
+        return x.length;
+    }
+
+    @Override double x(int i) { return x[i]; }
+    @Override double y(int i) { return y[i]; }
+    @Override double angle(int i) { return angle[i]; }
+    @Override double amplitude(int i) { return amplitude[i]; }
+    @Override int age(int i) { return age[i]; }
+    @Override int generation(int i) { return generation[i]; }
+    @Override double phase(int i) { return phase[i]; }
+    @Override int path(int i) { return path[i]; }
+    @Override int hitIn(int i) { return hitIn[i]; }
+
+    @Override void setX(int i, double x) { this.x[i] = x; }
+    @Override void setY(int i, double y) { this.y[i] = y; }
+    @Override void setAngle(int i, double angle) { this.angle[i] = angle; }
+    @Override void setAmplitude(int i, double amplitude) { this.amplitude[i] = amplitude; }
+    @Override void setAge(int i, int age) { this.age[i] = age; }
+    @Override void setGeneration(int i, int generation) { this.generation[i] = generation; }
+    @Override void setPhase(int i, double phase) { this.phase[i] = phase; }
+    @Override void setPath(int i, int path) { this.path[i] = path; }
+    @Override void setHitIn(int i, int hitIn) { this.hitIn[i] = hitIn; }
+
+    // A column at a time, which the JIT can vectorise
+    @Override
+    void copyTo(FrontSnapshot into) {
+        int count = size;
+        into.ensureCapacity(count);
+        float[] toX = into.x, toY = into.y, toAmplitude = into.amplitude;
+        for (int i = 0; i < count; i++) {
+            toX[i] = (float) x[i];
+        }
+        for (int i = 0; i < count; i++) {
+            toY[i] = (float) y[i];
+        }
+        for (int i = 0; i < count; i++) {
+            toAmplitude[i] = (float) amplitude[i];
+        }
+        System.arraycopy(generation, 0, into.generation, 0, count);
+        into.count = count;
+    }
+
+    @Override
+    void moveRange(int from, int to, int count) {
+        if (from != to && count > 0) {
+            System.arraycopy(x, from, x, to, count);
+            System.arraycopy(y, from, y, to, count);
+            System.arraycopy(angle, from, angle, to, count);
+            System.arraycopy(amplitude, from, amplitude, to, count);
+            System.arraycopy(age, from, age, to, count);
+            System.arraycopy(generation, from, generation, to, count);
+            System.arraycopy(phase, from, phase, to, count);
+            System.arraycopy(path, from, path, to, count);
+            System.arraycopy(hitIn, from, hitIn, to, count);
+        }
+    }
+
+    @Override
+    void addAll(WaveFrontPool pool) {
+        HeapFrontPool other = (HeapFrontPool) pool;
+        int count = other.size;
+        if (count == 0) {
+            return;
+        }
+        ensureCapacity(size + count);
+        System.arraycopy(other.x, 0, x, size, count);
+        System.arraycopy(other.y, 0, y, size, count);
+        System.arraycopy(other.angle, 0, angle, size, count);
+        System.arraycopy(other.amplitude, 0, amplitude, size, count);
+        System.arraycopy(other.age, 0, age, size, count);
+        System.arraycopy(other.generation, 0, generation, size, count);
+        System.arraycopy(other.phase, 0, phase, size, count);
+        System.arraycopy(other.path, 0, path, size, count);
+        System.arraycopy(other.hitIn, 0, hitIn, size, count);
+        size += count;
+    }
+
+    @Override
+    void grow(int minCapacity) {
+        int capacity = grownCapacity(minCapacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        angle = Arrays.copyOf(angle, capacity);
+        amplitude = Arrays.copyOf(amplitude, capacity);
+        age = Arrays.copyOf(age, capacity);
+        generation = Arrays.copyOf(generation, capacity);
+        phase = Arrays.copyOf(phase, capacity);
+        path = Arrays.copyOf(path, capacity);
+        hitIn = Arrays.copyOf(hitIn, capacity);
+    }
+}
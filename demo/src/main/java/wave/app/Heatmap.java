@@ -0,0 +1,129 @@
+package wave.app;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Running per-cell sum of what the waves deposit as they pass, for coverage
+// and intensity maps. Every step each live front adds its contribution to the
+// cell it is in, weighted by how far it moved, so the map builds up as the
+// simulation runs and a long run costs no more per step than a short one.
+// In the wave-equation mode each cell takes the field value under it instead.
+class Heatmap {
+    private final double cellSize;
+    private final HeatmapMode mode;
+    int cols, rows;
+    float[] values = new float[0];
+    private float peak = 0; // Largest magnitude so far, for scaling the display
+    private long steps = 0;
+
+    Heatmap(double cellSize, HeatmapMode mode, double width, double height) {
+        this.cellSize = cellSize;
+        this.mode = mode;
+        resize(width, height);
+    }
+
+    HeatmapMode getMode() {
+        return mode;
+    }
+
+    // Starts over on a raster covering the given map size
+    void resize(double width, double height) {
+        cols = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        values = new float[cols * rows];
+        peak = 0;
+        steps = 0;
+    }
+
+    void clear() {
+        Arrays.fill(values, 0f);
+        peak = 0;
+        steps = 0;
+    }
+
+    // Adds every front of the pool, each having moved distance pixels
+    void deposit(WaveFrontPool fronts, double distance) {
+        double weight = distance / cellSize;
+        for (int i = 0; i < fronts.size(); i++) {
+            deposit(fronts.x(i), fronts.y(i), fronts.amplitude(i), fronts.phase(i), weight);
+        }
+        steps++;
+    }
+
+    // Adds every live event-mode front at the given time
+    void deposit(EventSolver events, double time, double distance) {
+        double weight = distance / cellSize;
+        for (int h = 0; h < events.size(); h++) {
+            int s = events.heap[h];
+            deposit(events.x(s, time), events.y(s, time), events.drawAmplitude(s, time), events.phase[s], weight);
+        }
+        steps++;
+    }
+
+    // Samples the wave-equation field at each cell centre; weight is the step
+    // length in reference frames
+    void deposit(FdtdSolver field, double weight) {
+        boolean signed = mode == HeatmapMode.SIGNED;
+        for (int cy = 0; cy < rows; cy++) {
+            double y = (cy + 0.5) * cellSize;
+            for (int cx = 0; cx < cols; cx++) {
+                float v = field.valueAt((cx + 0.5) * cellSize, y);
+                add(cy * cols + cx, (float) ((signed ? v : v * v) * weight));
+            }
+        }
+        steps++;
+    }
+
+    private void deposit(double x, double y, double amplitude, double phase, double weight) {
+        int cx = (int) (x / cellSize), cy = (int) (y / cellSize);
+        if (x < 0 || y < 0 || cx >= cols || cy >= rows) {
+            return;
+        }
+        double v = mode == HeatmapMode.SIGNED ? amplitude * Math.cos(phase) : amplitude * amplitude;
+        add(cy * cols + cx, (float) (v * weight));
+    }
+
+    private void add(int cell, float contribution) {
+        float v = values[cell] += contribution;
+        float magnitude = Math.abs(v);
+        if (magnitude > peak) {
+            peak = magnitude;
+        }
+    }
+
+    void copyTo(FrontSnapshot into) {
+        into.ensureHeatCapacity(cols * rows);
+        System.arraycopy(values, 0, into.heat, 0, cols * rows);
+        into.heatCols = cols;
+        into.heatRows = rows;
+        into.heatCellSize = (float) cellSize;
+        into.heatPeak = peak;
+        into.heatSigned = mode == HeatmapMode.SIGNED;
+    }
+
+    // Writes the raster as CSV, one line per row, after a '#' header line
+    // with the layout (numpy.loadtxt and most spreadsheets skip it)
+    void write(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write(String.format(Locale.ROOT, "# heatmap %s cols=%d rows=%d cellSize=%s steps=%d%n",
+                    mode.name().toLowerCase(Locale.ROOT), cols, rows, cellSize, steps));
+            StringBuilder line = new StringBuilder();
+            for (int cy = 0; cy < rows; cy++) {
+                line.setLength(0);
+                for (int cx = 0; cx < cols; cx++) {
+                    if (cx > 0) {
+                        line.append(',');
+                    }
+                    line.append(values[cy * cols + cx]);
+                }
+                line.append('\n');
+                out.write(line.toString());
+            }
+        }
+    }
+}
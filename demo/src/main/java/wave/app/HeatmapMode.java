@@ -0,0 +1,18 @@
+package wave.app;
+
+public enum HeatmapMode {
+    OFF("Off"),
+    INTENSITY("Intensity"), // Amplitude squared: where the energy goes
+    SIGNED("Signed");       // Amplitude times cos(phase): where sources add up or cancel
+
+    private final String displayName;
+
+    HeatmapMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() { return displayName; }
+
+    @Override
+    public String toString() { return displayName; }
+}
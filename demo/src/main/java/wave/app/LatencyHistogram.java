@@ -0,0 +1,98 @@
+package wave.app;
+
+import java.util.Arrays;
+
+// Fixed-size log-linear histogram of durations in nanoseconds: each power of
+// two is split into 8 buckets, so percentiles are within 12.5% whatever the
+// scale. record() is a couple of shifts and an array increment, with no
+// allocation; reading is done off the hot path.
+//
+// Only the thread that records may call reset(). Other threads use
+// requestReset(), which the recording thread acts on at its next record(),
+// so the counts and the total are never cleared in the middle of an update.
+class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total = 0;
+    private long max = 0;
+    private volatile boolean resetRequested = false;
+
+    void record(long nanos) {
+        if (resetRequested) {
+            resetRequested = false;
+            reset();
+        }
+        long value = Math.max(0, nanos);
+        counts[bucket(value)]++;
+        total++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    long count() {
+        return total;
+    }
+
+    long max() {
+        return max;
+    }
+
+    void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        max = 0;
+    }
+
+    // Safe from any thread; takes effect at the next record()
+    void requestReset() {
+        resetRequested = true;
+    }
+
+    // Copies the bucket counts, e.g. to diff two readings
+    void copyCounts(long[] into) {
+        System.arraycopy(counts, 0, into, 0, BUCKETS);
+    }
+
+    long percentile(double fraction) {
+        return percentile(counts, total, fraction);
+    }
+
+    // Upper edge of the bucket holding the given fraction of the samples
+    static long percentile(long[] counts, long total, double fraction) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return upperEdge(b);
+            }
+        }
+        return upperEdge(counts.length - 1);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperEdge(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
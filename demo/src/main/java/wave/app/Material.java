@@ -0,0 +1,49 @@
+package wave.app;
+
+// What a wall does with the energy of a front that hits it: the fractions
+// reflected, transmitted and absorbed, which always add up to one. Fronts
+// carry amplitudes, so a collision scales them by the square roots of the
+// fractions; those are worked out once here, and the collision path only
+// reads them.
+public final class Material {
+    // Slack for coefficients that went through text or a slider
+    private static final double TOLERANCE = 1e-6;
+
+    final double reflection, transmission, absorption; // Energy fractions
+    final double reflectedAmplitude, transmittedAmplitude;
+
+    Material(double reflection, double transmission, double absorption) {
+        if (!(reflection >= 0 && transmission >= 0 && absorption >= 0)
+                || Math.abs(reflection + transmission + absorption - 1) > TOLERANCE) {
+            throw new IllegalArgumentException(String.format(
+                    "reflection %s + transmission %s + absorption %s must be 1, each at least 0",
+                    reflection, transmission, absorption));
+        }
+        this.reflection = reflection;
+        this.transmission = transmission;
+        this.absorption = absorption;
+        reflectedAmplitude = Math.sqrt(reflection);
+        transmittedAmplitude = Math.sqrt(transmission);
+    }
+
+    // Absorbs whatever is neither reflected nor transmitted
+    static Material of(double reflection, double transmission) {
+        double absorption = 1 - reflection - transmission;
+        if (absorption < 0 && absorption > -TOLERANCE) {
+            absorption = 0;
+        }
+        return new Material(reflection, transmission, absorption);
+    }
+
+    public double getReflection() {
+        return reflection;
+    }
+
+    public double getTransmission() {
+        return transmission;
+    }
+
+    public double getAbsorption() {
+        return absorption;
+    }
+}
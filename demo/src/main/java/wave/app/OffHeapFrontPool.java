@@ -0,0 +1,152 @@
+package wave.app;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.ref.Cleaner;
+
+// Front columns in native memory, one segment per field, so the heap holds
+// only this object however many fronts there are: nothing for the GC to mark
+// or copy. The float32 variant keeps position, angle, amplitude and phase as
+// floats, which rounds positions to well under a hundredth of a pixel on any
+// plausible map and cuts a front from 56 bytes to 36.
+//
+// Uses the foreign memory API, a preview in Java 21: this class is compiled
+// with --enable-preview and only loaded through FrontStorage when the JVM
+// runs with it too.
+final class OffHeapFrontPool extends WaveFrontPool {
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final int REAL_COLUMNS = 5;
+
+    private final boolean single;
+    private final long realBytes;
+    private final Memory memory = new Memory();
+    private final Cleaner.Cleanable cleanable;
+    private MemorySegment x, y, angle, amplitude, phase; // float or double
+    private MemorySegment age, generation, path, hitIn;
+    private MemorySegment[] columns; // All of the above, the real ones first
+    private int capacity;
+
+    // The arena holding the current columns. Kept apart from the pool so the
+    // cleaner can close it once a pool that was never freed is collected.
+    private static class Memory implements Runnable {
+        volatile Arena arena;
+
+        @Override
+        public void run() {
+            Arena arena = this.arena;
+            this.arena = null;
+            if (arena != null) {
+                arena.close();
+            }
+        }
+    }
+
+    OffHeapFrontPool(int initialCapacity, boolean single) {
+        this.single = single;
+        realBytes = single ? Float.BYTES : Double.BYTES;
+        cleanable = CLEANER.register(this, memory);
+        allocate(Math.max(16, initialCapacity));
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override double x(int i) { return real(x, i); }
+    @Override double y(int i) { return real(y, i); }
+    @Override double angle(int i) { return real(angle, i); }
+    @Override double amplitude(int i) { return real(amplitude, i); }
+    @Override int age(int i) { return age.get(ValueLayout.JAVA_INT, (long) i << 2); }
+    @Override int generation(int i) { return generation.get(ValueLayout.JAVA_INT, (long) i << 2); }
+    @Override double phase(int i) { return real(phase, i); }
+    @Override int path(int i) { return path.get(ValueLayout.JAVA_INT, (long) i << 2); }
+    @Override int hitIn(int i) { return hitIn.get(ValueLayout.JAVA_INT, (long) i << 2); }
+
+    @Override void setX(int i, double x) { setReal(this.x, i, x); }
+    @Override void setY(int i, double y) { setReal(this.y, i, y); }
+    @Override void setAngle(int i, double angle) { setReal(this.angle, i, angle); }
+    @Override void setAmplitude(int i, double amplitude) { setReal(this.amplitude, i, amplitude); }
+    @Override void setAge(int i, int age) { this.age.set(ValueLayout.JAVA_INT, (long) i << 2, age); }
+    @Override void setGeneration(int i, int generation) { this.generation.set(ValueLayout.JAVA_INT, (long) i << 2, generation); }
+    @Override void setPhase(int i, double phase) { setReal(this.phase, i, phase); }
+    @Override void setPath(int i, int path) { this.path.set(ValueLayout.JAVA_INT, (long) i << 2, path); }
+    @Override void setHitIn(int i, int hitIn) { this.hitIn.set(ValueLayout.JAVA_INT, (long) i << 2, hitIn); }
+
+    private double real(MemorySegment column, int i) {
+        return single ? column.get(ValueLayout.JAVA_FLOAT, (long) i << 2) : column.get(ValueLayout.JAVA_DOUBLE, (long) i << 3);
+    }
+
+    private void setReal(MemorySegment column, int i, double value) {
+        if (single) {
+            column.set(ValueLayout.JAVA_FLOAT, (long) i << 2, (float) value);
+        } else {
+            column.set(ValueLayout.JAVA_DOUBLE, (long) i << 3, value);
+        }
+    }
+
+    @Override
+    void moveRange(int from, int to, int count) {
+        if (from != to && count > 0) {
+            // Overlapping copies are safe: they behave as if through a temporary
+            copyColumns(columns, from, columns, to, count);
+        }
+    }
+
+    @Override
+    void addAll(WaveFrontPool pool) {
+        OffHeapFrontPool other = (OffHeapFrontPool) pool;
+        int count = other.size;
+        if (count == 0) {
+            return;
+        }
+        ensureCapacity(size + count);
+        copyColumns(other.columns, 0, columns, size, count);
+        size += count;
+    }
+
+    @Override
+    void free() {
+        cleanable.clean();
+        x = y = angle = amplitude = phase = null;
+        age = generation = path = hitIn = null;
+        columns = null;
+        capacity = 0;
+        size = 0;
+    }
+
+    @Override
+    void grow(int minCapacity) {
+        MemorySegment[] old = columns;
+        Arena oldArena = memory.arena;
+        allocate(grownCapacity(minCapacity));
+        copyColumns(old, 0, columns, 0, size);
+        oldArena.close();
+    }
+
+    // Puts fresh columns for the given capacity in a new arena
+    private void allocate(int capacity) {
+        Arena arena = Arena.ofShared(); // Stepper threads write the pools too
+        x = arena.allocate(capacity * realBytes, realBytes);
+        y = arena.allocate(capacity * realBytes, realBytes);
+        angle = arena.allocate(capacity * realBytes, realBytes);
+        amplitude = arena.allocate(capacity * realBytes, realBytes);
+        phase = arena.allocate(capacity * realBytes, realBytes);
+        age = arena.allocate((long) capacity * Integer.BYTES, Integer.BYTES);
+        generation = arena.allocate((long) capacity * Integer.BYTES, Integer.BYTES);
+        path = arena.allocate((long) capacity * Integer.BYTES, Integer.BYTES);
+        hitIn = arena.allocate((long) capacity * Integer.BYTES, Integer.BYTES);
+        columns = new MemorySegment[] { x, y, angle, amplitude, phase, age, generation, path, hitIn };
+        memory.arena = arena;
+        this.capacity = capacity;
+    }
+
+    // Copies count fronts between column sets laid out as in allocate
+    private void copyColumns(MemorySegment[] from, int fromIndex, MemorySegment[] to, int toIndex, int count) {
+        for (int c = 0; c < from.length; c++) {
+            long bytes = c < REAL_COLUMNS ? realBytes : Integer.BYTES;
+            MemorySegment.copy(from[c], fromIndex * bytes, to[c], toIndex * bytes, count * bytes);
+        }
+    }
+}
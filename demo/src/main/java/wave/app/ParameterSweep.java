@@ -0,0 +1,379 @@
+package wave.app;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs one scene once for every combination of a grid of parameters and
+// writes a CSV row of summary metrics per run: front counts and the energy
+// that reached each target rectangle. Optionally the same metrics are also
+// sampled every few steps into a second CSV.
+//
+// Runs are independent engines on a fixed pool of platform threads. Stepping
+// is pure CPU work with no blocking, so virtual threads or more threads than
+// cores would only add switching. The scene is loaded once: every run shares
+// its wall grid, and walls are only copied when a run changes coefficients.
+class ParameterSweep {
+    // One axis of the grid. Names are waveSpeed, emitRate (of every source),
+    // attenuation, maxReflections, maxGeneration, TYPE.reflection,
+    // TYPE.transmission and TYPE.maxGeneration for every wall of a WallType,
+    // and wallN.reflection and wallN.transmission for the Nth wall. Whatever
+    // a wall neither reflects nor transmits is absorbed.
+    static class Parameter {
+        final String name;
+        final double[] values;
+        private final WallType type; // Set for a per-type coefficient
+        private final int wallIndex; // Set for a per-wall coefficient, or -1
+        private final boolean reflection;
+        private final boolean generation; // TYPE.maxGeneration
+
+        Parameter(String name, double[] values) {
+            if (values.length == 0) {
+                throw new IllegalArgumentException(name + ": no values");
+            }
+            this.name = name;
+            this.values = values;
+            int dot = name.indexOf('.');
+            if (dot < 0) {
+                if (!List.of("waveSpeed", "emitRate", "attenuation", "maxReflections", "maxGeneration")
+                        .contains(name)) {
+                    throw new IllegalArgumentException("unknown parameter " + name);
+                }
+                type = null;
+                wallIndex = -1;
+                reflection = false;
+                generation = false;
+                return;
+            }
+            String target = name.substring(0, dot), field = name.substring(dot + 1);
+            if (!field.equals("reflection") && !field.equals("transmission") && !field.equals("maxGeneration")) {
+                throw new IllegalArgumentException("unknown wall parameter " + name);
+            }
+            reflection = field.equals("reflection");
+            generation = field.equals("maxGeneration");
+            if (generation) {
+                type = WallType.valueOf(target.toUpperCase(Locale.ROOT));
+                wallIndex = -1;
+            } else if (target.startsWith("wall") && target.length() > 4 && Character.isDigit(target.charAt(4))) {
+                type = null;
+                wallIndex = Integer.parseInt(target.substring(4));
+            } else {
+                type = WallType.valueOf(target.toUpperCase(Locale.ROOT));
+                wallIndex = -1;
+            }
+        }
+
+        // "name=v1,v2,..." or "name=from:to:count" for evenly spaced values
+        static Parameter parse(String spec) {
+            int eq = spec.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("expected name=values: " + spec);
+            }
+            String name = spec.substring(0, eq), list = spec.substring(eq + 1);
+            String[] range = list.split(":");
+            if (range.length == 3) {
+                double from = Double.parseDouble(range[0]), to = Double.parseDouble(range[1]);
+                int count = Integer.parseInt(range[2]);
+                double[] values = new double[Math.max(0, count)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = count == 1 ? from : from + (to - from) * i / (count - 1);
+                }
+                return new Parameter(name, values);
+            }
+            String[] parts = list.split(",");
+            double[] values = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Double.parseDouble(parts[i].trim());
+            }
+            return new Parameter(name, values);
+        }
+
+        boolean isWallCoefficient() {
+            return (type != null || wallIndex >= 0) && !generation;
+        }
+    }
+
+    // A rectangle whose received energy is reported for every run
+    static class Target {
+        final String name;
+        final double minX, minY, maxX, maxY;
+
+        Target(String name, double x1, double y1, double x2, double y2) {
+            this.name = name;
+            minX = Math.min(x1, x2);
+            minY = Math.min(y1, y2);
+            maxX = Math.max(x1, x2);
+            maxY = Math.max(y1, y2);
+        }
+
+        // "name=x1,y1,x2,y2"
+        static Target parse(String spec) {
+            int eq = spec.indexOf('=');
+            String[] parts = spec.substring(eq + 1).split(",");
+            if (eq <= 0 || parts.length != 4) {
+                throw new IllegalArgumentException("expected name=x1,y1,x2,y2: " + spec);
+            }
+            return new Target(spec.substring(0, eq), Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                    Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+        }
+    }
+
+    // Summary of one finished run, already formatted
+    private static class Result {
+        final String row;
+        final String series;
+
+        Result(String row, String series) {
+            this.row = row;
+            this.series = series;
+        }
+    }
+
+    private final WaveEngine scene;
+    private final List<Parameter> parameters = new ArrayList<>();
+    private final List<Target> targets = new ArrayList<>();
+    int steps = 1000;
+    double dt = WaveEngine.REFERENCE_DT;
+    int sampleEvery = 0; // Steps between rows of the time series; 0 for none
+
+    // Runs are set up from the scene's walls, sources and settings
+    ParameterSweep(WaveEngine scene) {
+        this.scene = scene;
+    }
+
+    void addParameter(Parameter parameter) {
+        if (parameter.wallIndex >= scene.getWalls().size()) {
+            throw new IllegalArgumentException(parameter.name + ": the scene has "
+                    + scene.getWalls().size() + " walls");
+        }
+        parameters.add(parameter);
+    }
+
+    void addTarget(Target target) {
+        targets.add(target);
+    }
+
+    // Every combination of the parameter values
+    int runCount() {
+        int count = 1;
+        for (Parameter parameter : parameters) {
+            count = Math.multiplyExact(count, parameter.values.length);
+        }
+        return count;
+    }
+
+    // The parameter values of a run, the last parameter varying fastest
+    double[] valuesOf(int run) {
+        double[] values = new double[parameters.size()];
+        for (int p = parameters.size() - 1; p >= 0; p--) {
+            double[] axis = parameters.get(p).values;
+            values[p] = axis[run % axis.length];
+            run /= axis.length;
+        }
+        return values;
+    }
+
+    // Runs everything on the given number of threads, writing each run's row
+    // as soon as it finishes; rows carry the run number, so they can be
+    // sorted back into grid order. Returns how many runs failed.
+    int runAll(int threads, Path summary, Path series) throws IOException, InterruptedException {
+        int runs = runCount();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorCompletionService<Result> done = new ExecutorCompletionService<>(pool);
+        int failed = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(summary, StandardCharsets.UTF_8);
+                BufferedWriter seriesOut = series == null ? null
+                        : Files.newBufferedWriter(series, StandardCharsets.UTF_8)) {
+            out.write(String.format(Locale.ROOT, "# sweep runs=%d steps=%d dt=%s mode=%s%n", runs, steps, dt,
+                    scene.getMode().name().toLowerCase(Locale.ROOT)));
+            out.write(summaryHeader());
+            if (seriesOut != null) {
+                seriesOut.write(seriesHeader());
+            }
+            for (int run = 0; run < runs; run++) {
+                int r = run;
+                done.submit(() -> run(r));
+            }
+            long start = System.nanoTime();
+            for (int finished = 1; finished <= runs; finished++) {
+                Future<Result> future = done.take();
+                try {
+                    Result result = future.get();
+                    out.write(result.row);
+                    if (seriesOut != null) {
+                        seriesOut.write(result.series);
+                    }
+                } catch (ExecutionException e) {
+                    failed++;
+                    System.err.println("run failed: " + e.getCause());
+                }
+                if (finished == runs || finished % Math.max(1, runs / 100) == 0) {
+                    // Keep what is done on disk, should a long sweep be stopped
+                    out.flush();
+                    System.out.printf("%d/%d runs (%.1f s)%n", finished, runs, (System.nanoTime() - start) / 1e9);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return failed;
+    }
+
+    // Sets up and steps one run
+    Result run(int run) {
+        double[] values = valuesOf(run);
+        WaveEngine engine = configure(values);
+        try {
+            double frames = dt / WaveEngine.REFERENCE_DT;
+            double[] energy = new double[targets.size()];
+            StringBuilder series = new StringBuilder();
+            int peakFronts = 0;
+            double frontSteps = 0;
+            long start = System.nanoTime();
+            for (int step = 1; step <= steps; step++) {
+                engine.step(dt);
+                int fronts = engine.frontCount();
+                peakFronts = Math.max(peakFronts, fronts);
+                frontSteps += fronts;
+                boolean sample = sampleEvery > 0 && step % sampleEvery == 0;
+                if (sample) {
+                    series.append(run).append(',').append(step).append(',')
+                            .append(num(engine.getTime())).append(',').append(fronts);
+                }
+                for (int t = 0; t < targets.size(); t++) {
+                    Target target = targets.get(t);
+                    double e = engine.energyIn(target.minX, target.minY, target.maxX, target.maxY);
+                    energy[t] += e * frames;
+                    if (sample) {
+                        series.append(',').append(num(e));
+                    }
+                }
+                if (sample) {
+                    series.append('\n');
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            StringBuilder row = new StringBuilder().append(run);
+            for (double value : values) {
+                row.append(',').append(num(value));
+            }
+            row.append(',').append(engine.frontCount()).append(',').append(peakFronts)
+                    .append(',').append(num(frontSteps / steps));
+            for (double e : energy) {
+                row.append(',').append(num(e));
+            }
+            row.append(',').append(num(elapsed / 1e6)).append('\n');
+            return new Result(row.toString(), series.toString());
+        } finally {
+            // Off the heap its fronts would otherwise wait for the GC
+            engine.freeFronts();
+        }
+    }
+
+    // A fresh engine for the scene with the given parameter values applied
+    private WaveEngine configure(double[] values) {
+        List<Wall> walls = scene.getWalls();
+        boolean copyWalls = false;
+        for (Parameter parameter : parameters) {
+            copyWalls |= parameter.isWallCoefficient();
+        }
+        if (copyWalls) {
+            double[] reflection = new double[walls.size()], transmission = new double[walls.size()];
+            for (int i = 0; i < walls.size(); i++) {
+                reflection[i] = walls.get(i).getReflectionCoeff();
+                transmission[i] = walls.get(i).getTransmissionCoeff();
+            }
+            // Per-type values first, so a per-wall value for one of them wins
+            for (int pass = 0; pass < 2; pass++) {
+                for (int p = 0; p < parameters.size(); p++) {
+                    Parameter parameter = parameters.get(p);
+                    if (!parameter.isWallCoefficient()) {
+                        continue;
+                    }
+                    double[] into = parameter.reflection ? reflection : transmission;
+                    if (pass == 0 && parameter.type != null) {
+                        for (int i = 0; i < walls.size(); i++) {
+                            if (walls.get(i).type == parameter.type) {
+                                into[i] = values[p];
+                            }
+                        }
+                    } else if (pass == 1 && parameter.wallIndex >= 0) {
+                        into[parameter.wallIndex] = values[p];
+                    }
+                }
+            }
+            List<Wall> copies = new ArrayList<>(walls.size());
+            for (int i = 0; i < walls.size(); i++) {
+                Wall wall = walls.get(i);
+                copies.add(new Wall(wall.x1, wall.y1, wall.x2, wall.y2, wall.type, reflection[i], transmission[i]));
+            }
+            walls = copies;
+        }
+
+        WaveEngine engine = scene.withWalls(walls);
+        for (int p = 0; p < parameters.size(); p++) {
+            double value = values[p];
+            Parameter parameter = parameters.get(p);
+            if (parameter.generation) {
+                engine.setMaxGeneration(parameter.type, (int) value);
+                continue;
+            }
+            switch (parameter.name) {
+                case "waveSpeed" -> engine.setWaveSpeed(value);
+                case "attenuation" -> engine.setAttenuation(value);
+                case "maxReflections" -> engine.setMaxReflections((int) value);
+                case "maxGeneration" -> engine.setMaxGeneration((int) value);
+                case "emitRate" -> {
+                    for (WaveSource source : engine.getSources()) {
+                        source.emitRate = Math.max(1, (int) value);
+                    }
+                }
+                default -> {
+                    // Wall coefficients, applied above
+                }
+            }
+        }
+        return engine;
+    }
+
+    private String summaryHeader() {
+        StringBuilder header = new StringBuilder("run");
+        for (Parameter parameter : parameters) {
+            header.append(',').append(parameter.name);
+        }
+        header.append(",fronts_final,fronts_peak,fronts_mean");
+        for (Target target : targets) {
+            header.append(',').append(target.name).append("_energy");
+        }
+        return header.append(",wall_ms\n").toString();
+    }
+
+    private String seriesHeader() {
+        StringBuilder header = new StringBuilder("run,step,time,fronts");
+        for (Target target : targets) {
+            header.append(',').append(target.name).append("_energy");
+        }
+        return header.append('\n').toString();
+    }
+
+    // Shortest text that reads back to the same double, as in SceneFile
+    private static String num(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : Double.toString(value);
+    }
+}
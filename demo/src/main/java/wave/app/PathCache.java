@@ -0,0 +1,274 @@
+package wave.app;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Traced paths of the rays each source emits, for the stepped ray mode. With
+// static walls and a fixed step, every emission from a source sends its rays
+// along exactly the same steps, hitting the same walls at the same steps and
+// spawning children at the same points, so a ray's path tree only needs to be
+// found once. A node is one straight leg: where it starts, how many steps
+// until it hits a wall (or for how many it was traced clear before dying),
+// and the nodes of the reflected and transmitted children. A front following
+// a node only counts its steps down instead of querying the wall grid.
+//
+// Trees are traced on the first emission after a source appears, moves or
+// changes its ray count. Adding a wall invalidates only the nodes whose legs
+// cross it, and removing one only those that ended on it; only the sources
+// owning those are traced again. Fronts on an invalidated node go back to
+// grid queries for the rest of their life.
+// Anything that changes every path (the step length, the decay, the
+// generation caps) drops the whole cache.
+//
+// Children that SpawnCulling would not let the stepper spawn are not traced.
+// Trees traced before the culling region changed may miss children the
+// stepper now does spawn; those fronts simply go on without a node.
+class PathCache {
+    static final int UNCACHED = -1;
+    private static final int MAX_NODES = 1 << 20;
+    private static final int MAX_INCREMENTAL_WALLS = 64; // More at once: start over
+
+    // Per node, in one arena; retraced sources leave their old nodes behind
+    // for the fronts still on them, until the arena is compacted
+    int[] steps = new int[0];    // Steps to the hit, or traced clear for
+    Wall[] wall = new Wall[0];   // Wall hit after steps, or null when the front died
+    int[] reflected = new int[0], transmitted = new int[0]; // Children, or UNCACHED
+    boolean[] valid = new boolean[0];
+    private double[] startX = new double[0], startY = new double[0];
+    private double[] endX = new double[0], endY = new double[0];
+    private Entry[] owner = new Entry[0];
+    private int size = 0;
+    private int garbage = 0; // Nodes of retraced or dropped trees
+
+    // The trees of one source, valid for its position and ray count
+    private static class Entry {
+        double x, y;
+        int rays;
+        int[] roots = new int[0];
+        int first, nodes; // Its nodes are traced in one go, so they are contiguous
+        boolean stale = true;
+    }
+
+    private final Map<WaveSource, Entry> entries = new IdentityHashMap<>();
+    private final WallGrid wallGrid;
+    private final WallGrid.Hit hit = new WallGrid.Hit();
+
+    // What the traced paths were stepped with
+    private double distance = Double.NaN, decay = Double.NaN, ageLimit = Double.NaN;
+    private int[] reflectLimit, transmitLimit;
+    private SpawnCulling culling; // Null when off
+
+    // Set when nodes that fronts may be on have been dropped; the engine then
+    // takes every front off the cache
+    boolean dropped = false;
+
+    PathCache(WallGrid wallGrid) {
+        this.wallGrid = wallGrid;
+    }
+
+    int size() {
+        return size - garbage;
+    }
+
+    // Called before each step; starts over when the step differs from the one
+    // the paths were traced with
+    void prepare(double distance, double decay, double ageLimit, int[] reflectLimit, int[] transmitLimit,
+            SpawnCulling culling) {
+        if (distance != this.distance || decay != this.decay || ageLimit != this.ageLimit) {
+            clear();
+        }
+        this.distance = distance;
+        this.decay = decay;
+        this.ageLimit = ageLimit;
+        this.reflectLimit = reflectLimit;
+        this.transmitLimit = transmitLimit;
+        this.culling = culling;
+        if (garbage > Math.max(size - garbage, 65536)) {
+            clear();
+        }
+    }
+
+    void clear() {
+        if (size > 0) {
+            dropped = true;
+        }
+        entries.clear();
+        Arrays.fill(wall, 0, size, null);
+        Arrays.fill(owner, 0, size, null);
+        size = 0;
+        garbage = 0;
+    }
+
+    // Root node of each ray the source emits with the given count, traced
+    // now if needed
+    int[] roots(WaveSource source, int rays) {
+        Entry entry = entries.get(source);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(source, entry);
+        }
+        if (entry.stale || entry.x != source.x || entry.y != source.y || entry.rays != rays) {
+            garbage += entry.nodes;
+            // Fronts may still follow the old nodes, but walls no longer make
+            // this entry stale through them
+            Arrays.fill(owner, entry.first, entry.first + entry.nodes, null);
+            entry.first = size;
+            entry.x = source.x;
+            entry.y = source.y;
+            entry.rays = rays;
+            entry.nodes = 0;
+            entry.stale = false;
+            if (entry.roots.length != rays) {
+                entry.roots = new int[rays];
+            }
+            for (int i = 0; i < rays; i++) {
+                double angle = i * (2 * Math.PI / rays);
+                entry.roots[i] = trace(entry, source.x, source.y, angle, 1.0, 0);
+            }
+        }
+        return entry.roots;
+    }
+
+    // Invalidates the nodes whose legs cross any of the new walls
+    void wallsAdded(List<Wall> added) {
+        if (size == 0) {
+            return;
+        }
+        if (added.size() > MAX_INCREMENTAL_WALLS) {
+            clear();
+            return;
+        }
+        for (int n = 0; n < size; n++) {
+            if (!valid[n]) {
+                continue;
+            }
+            for (Wall w : added) {
+                if (WallGrid.intersect(startX[n], startY[n], endX[n], endY[n], w) >= 0) {
+                    valid[n] = false;
+                    dropped = true;
+                    if (owner[n] != null) {
+                        owner[n].stale = true;
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    // Invalidates the nodes whose legs ended on any of the removed walls; the
+    // fronts there would now go on past them
+    void wallsRemoved(Set<Wall> removed) {
+        for (int n = 0; n < size; n++) {
+            if (valid[n] && wall[n] != null && removed.contains(wall[n])) {
+                valid[n] = false;
+                dropped = true;
+                if (owner[n] != null) {
+                    owner[n].stale = true;
+                }
+            }
+        }
+    }
+
+    // Forgets a removed source's trees; fronts it emitted keep following them
+    void sourceRemoved(WaveSource source) {
+        Entry entry = entries.remove(source);
+        if (entry != null) {
+            garbage += entry.nodes;
+            Arrays.fill(owner, entry.first, entry.first + entry.nodes, null);
+        }
+    }
+
+    // Takes fronts whose nodes were dropped or invalidated off the cache; due
+    // before any new node is traced
+    void release(WaveFrontPool fronts) {
+        if (!dropped) {
+            return;
+        }
+        dropped = false;
+        for (int i = 0; i < fronts.size(); i++) {
+            int node = fronts.path(i);
+            if (node != UNCACHED && (node >= size || !valid[node])) {
+                fronts.setPath(i, UNCACHED);
+            }
+        }
+    }
+
+    // A child node a front may still follow, or UNCACHED
+    int child(int node, boolean reflect) {
+        int c = reflect ? reflected[node] : transmitted[node];
+        return c != UNCACHED && valid[c] ? c : UNCACHED;
+    }
+
+    // Steps one leg exactly as FrontStepper would, then its children
+    private int trace(Entry entry, double x, double y, double angle, double amplitude, int generation) {
+        if (size == MAX_NODES) {
+            return UNCACHED;
+        }
+        int node = allocate();
+        owner[node] = entry;
+        entry.nodes++;
+        startX[node] = x;
+        startY[node] = y;
+        double cos = Math.cos(angle), sin = Math.sin(angle);
+        for (int s = 1; ; s++) {
+            double nextX = x + cos * distance;
+            double nextY = y + sin * distance;
+            amplitude *= decay;
+            boolean collided = wallGrid.firstHit(x, y, nextX, nextY, hit);
+            if (collided || s > ageLimit || amplitude < WaveEngine.MIN_AMPLITUDE) {
+                Wall w = collided ? hit.wall : null;
+                steps[node] = s;
+                wall[node] = w;
+                endX[node] = nextX;
+                endY[node] = nextY;
+                reflected[node] = UNCACHED;
+                transmitted[node] = UNCACHED;
+                if (w != null) {
+                    Material material = w.material;
+                    int type = w.type.ordinal();
+                    double reflectAngle = FrontStepper.reflectAngle(angle, w);
+                    double reflectAmplitude = amplitude * material.reflectedAmplitude;
+                    if (material.reflectedAmplitude > 0 && generation < reflectLimit[type]
+                            && !culled(nextX, nextY, reflectAngle, reflectAmplitude)) {
+                        int c = trace(entry, nextX, nextY, reflectAngle, reflectAmplitude, generation + 1);
+                        reflected[node] = c;
+                    }
+                    double transmitAmplitude = amplitude * material.transmittedAmplitude;
+                    if (material.transmittedAmplitude > 0 && generation < transmitLimit[type]
+                            && !culled(nextX, nextY, angle, transmitAmplitude)) {
+                        int c = trace(entry, nextX, nextY, angle, transmitAmplitude, generation + 1);
+                        transmitted[node] = c;
+                    }
+                }
+                return node;
+            }
+            x = nextX;
+            y = nextY;
+        }
+    }
+
+    private boolean culled(double x, double y, double angle, double amplitude) {
+        return culling != null && (culling.faint(amplitude) || culling.outside(x, y, angle, amplitude));
+    }
+
+    private int allocate() {
+        if (size == steps.length) {
+            int capacity = Math.min(MAX_NODES, Math.max(1024, size * 2));
+            steps = Arrays.copyOf(steps, capacity);
+            wall = Arrays.copyOf(wall, capacity);
+            reflected = Arrays.copyOf(reflected, capacity);
+            transmitted = Arrays.copyOf(transmitted, capacity);
+            valid = Arrays.copyOf(valid, capacity);
+            startX = Arrays.copyOf(startX, capacity);
+            startY = Arrays.copyOf(startY, capacity);
+            endX = Arrays.copyOf(endX, capacity);
+            endY = Arrays.copyOf(endY, capacity);
+            owner = Arrays.copyOf(owner, capacity);
+        }
+        valid[size] = true;
+        return size++;
+    }
+}
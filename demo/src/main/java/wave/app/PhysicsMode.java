@@ -0,0 +1,19 @@
+package wave.app;
+
+public enum PhysicsMode {
+    RAYS("Ray Steps"),      // Every front moves and is collision tested each step
+    EVENTS("Event Driven"), // Fronts are only touched when they hit a wall or die
+    ARCS("Arcs"),           // Each emission is a few expanding arcs split at walls
+    FDTD("Wave Equation");  // Finite-difference field on a grid, no fronts at all
+
+    private final String displayName;
+
+    PhysicsMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() { return displayName; }
+
+    @Override
+    public String toString() { return displayName; }
+}
@@ -0,0 +1,322 @@
+package wave.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Streams every recorded step to a file in the Recording format. The step
+// thread only copies the engine state into a snapshot from a small pool and
+// queues it; a background thread quantises, delta codes and writes the frames
+// in chunks, so the step loop never waits on the disk. It only waits when the
+// whole pool is queued, i.e. when the disk can't keep up at all.
+//
+// Where that copy would cost a good part of a step, the step thread hands
+// over less and the writer does the rest:
+//   events  an event step only touches the fronts whose events fire, so the
+//           writer gets the engine's EventLog of those changes, keeps its own
+//           copy of the fronts and works out their positions
+//   arcs    likewise with the ArcLog of the arcs added and dropped; the
+//           writer samples the points
+//   rays    every front changes every step, and copying them costs about
+//   fdtd    5% of a ray step and 13% of a much cheaper field step. Only
+//           every 2nd and every 4th step is recorded. Replay goes by the
+//           recorded times, so it still plays at the right speed.
+public class Recorder implements AutoCloseable {
+    private static final int FRAMES_PER_CHUNK = 64;
+    private static final int BUFFERS = 16;
+
+    private final FileChannel channel;
+    private final WaveEngine engine;
+    private final ArrayBlockingQueue<Frame> free = new ArrayBlockingQueue<>(BUFFERS);
+    private final ArrayBlockingQueue<Frame> pending = new ArrayBlockingQueue<>(BUFFERS + 1);
+    private final Frame end = new Frame(); // Queued by close()
+    private final Thread writer;
+    private volatile IOException failure;
+    private long frames = 0;
+    private long stalls = 0;
+    private boolean closed = false;
+    private PhysicsMode lastMode;
+
+    // A queued step: the engine's snapshot, or what the writer fills it from
+    private static final class Frame {
+        final FrontSnapshot snapshot = new FrontSnapshot();
+        PhysicsMode mode;
+        EventLog events;
+        ArcLog arcs;
+    }
+
+    // Writer thread state
+    private byte[] chunk = new byte[1 << 16];
+    private ByteBuffer chunkView = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+    private int chunkSize = 0;
+    private int chunkFrames = 0;
+    private ByteBuffer index = ByteBuffer.allocate(12 * 64).order(ByteOrder.LITTLE_ENDIAN);
+    private int chunkCount = 0;
+    private long position;
+    private int[] field = new int[0];
+    private int fieldCols, fieldRows;
+    private final EventLog.Mirror events = new EventLog.Mirror();
+    private final ArcSolver arcs = new ArcSolver(null); // Follows the engine's
+
+    public Recorder(Path path, WaveEngine engine) throws IOException {
+        this.engine = engine;
+        channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer scene = SceneFile.encode(engine);
+        ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(Recording.MAGIC).putInt(Recording.VERSION).putInt(FRAMES_PER_CHUNK)
+                .putInt(scene.remaining()).flip();
+        try {
+            write(header);
+            write(scene);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        for (int i = 0; i < BUFFERS; i++) {
+            free.add(new Frame());
+        }
+        writer = new Thread(this::drain, "recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    // Times record() had to wait for the writer to free a buffer
+    public long getStalls() {
+        return stalls;
+    }
+
+    public long getBytesWritten() {
+        return position;
+    }
+
+    // Set when writing failed; later frames are dropped and close() throws it
+    public IOException getFailure() {
+        return failure;
+    }
+
+    // Queues the engine's current state as the next frame
+    public void record(WaveEngine engine) {
+        if (closed || failure != null) {
+            engine.stopLogs();
+            return;
+        }
+        PhysicsMode mode = engine.getMode();
+        if (mode != lastMode) {
+            // The log of the new mode starts over with everything
+            engine.stopLogs();
+            lastMode = mode;
+        }
+        if (engine.getStepCount() % stride(mode) != 0) {
+            return;
+        }
+        Frame frame = free.poll();
+        if (frame == null) {
+            stalls++;
+            try {
+                frame = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        frame.mode = mode;
+        switch (mode) {
+            case EVENTS -> frame.events = engine.swapEventLog(frame.events);
+            case ARCS -> frame.arcs = engine.swapArcLog(frame.arcs);
+            default -> engine.copyState(frame.snapshot);
+        }
+        pending.add(frame);
+        frames++;
+    }
+
+    // Writes out the queued frames, the last chunk and the frame index. Call
+    // it from the thread that records.
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        engine.stopLogs();
+        pending.add(end);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (failure == null) {
+                flushChunk();
+                long indexOffset = position;
+                index.flip();
+                write(index);
+                ByteBuffer trailer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+                trailer.putLong(indexOffset).putInt(chunkCount).putInt(Recording.MAGIC).flip();
+                write(trailer);
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Frame frame = pending.take();
+                if (frame == end) {
+                    return;
+                }
+                if (failure == null) {
+                    try {
+                        fill(frame);
+                        append(frame.snapshot);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                free.add(frame);
+            }
+        } catch (InterruptedException e) {
+            // Only close() stops the writer, and it does so through the queue
+        }
+    }
+
+    // Works out the snapshot of a frame the step thread did not copy
+    private void fill(Frame frame) {
+        FrontSnapshot snapshot = frame.snapshot;
+        switch (frame.mode) {
+            case EVENTS -> {
+                events.apply(frame.events);
+                events.evaluate(frame.events, snapshot);
+            }
+            case ARCS -> {
+                ArcLog log = frame.arcs;
+                arcs.follow(log);
+                snapshot.count = arcs.sample(log.time, WaveEngine.ARC_SAMPLE_SPACING, snapshot);
+                snapshot.stepCount = log.stepCount;
+                snapshot.time = log.time;
+                snapshot.fieldCols = 0;
+                snapshot.heatCols = 0;
+            }
+            default -> {
+            }
+        }
+    }
+
+    // Steps per recorded frame
+    private static int stride(PhysicsMode mode) {
+        return switch (mode) {
+            case RAYS -> 2;
+            case FDTD -> 4;
+            default -> 1;
+        };
+    }
+
+    private void append(FrontSnapshot frame) throws IOException {
+        int cells = frame.fieldCols * frame.fieldRows;
+        ensure(16 + 5 + frame.count * 12 + 14 + cells * 5);
+        byte[] out = chunk;
+        int at = chunkSize;
+        chunkView.putLong(at, frame.stepCount).putDouble(at + 8, frame.time);
+        at = putVarint(out, at + 16, frame.count);
+        int lastX = 0, lastY = 0;
+        for (int i = 0; i < frame.count; i++) {
+            int x = Math.round(frame.x[i] * Recording.POSITION_STEPS);
+            int y = Math.round(frame.y[i] * Recording.POSITION_STEPS);
+            at = putVarint(out, at, zigzag(x - lastX));
+            at = putVarint(out, at, zigzag(y - lastY));
+            lastX = x;
+            lastY = y;
+            out[at++] = (byte) (Math.min(1f, Math.max(0f, frame.amplitude[i])) * 255f + 0.5f);
+            out[at++] = (byte) Math.min(255, frame.generation[i]);
+        }
+
+        at = putVarint(out, at, frame.fieldCols);
+        if (cells > 0) {
+            at = putVarint(out, at, frame.fieldRows);
+            chunkView.putFloat(at, frame.fieldCellSize);
+            at += 4;
+            if (frame.fieldCols != fieldCols || frame.fieldRows != fieldRows) {
+                if (field.length < cells) {
+                    field = new int[cells];
+                }
+                Arrays.fill(field, 0, cells, 0);
+                fieldCols = frame.fieldCols;
+                fieldRows = frame.fieldRows;
+            }
+            float[] values = frame.field;
+            int[] base = field;
+            for (int i = 0; i < cells; i++) {
+                int q = Math.round(values[i] * Recording.FIELD_STEPS);
+                at = putVarint(out, at, zigzag(q - base[i]));
+                base[i] = q;
+            }
+        }
+        chunkSize = at;
+
+        if (++chunkFrames == FRAMES_PER_CHUNK) {
+            flushChunk();
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (chunkFrames == 0) {
+            return;
+        }
+        if (index.remaining() < 12) {
+            index = ByteBuffer.allocate(index.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN).put(index.flip());
+        }
+        index.putLong(position).putInt(chunkFrames);
+        chunkCount++;
+
+        ByteBuffer head = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        head.putInt(chunkSize).putInt(chunkFrames).flip();
+        write(head);
+        write(ByteBuffer.wrap(chunk, 0, chunkSize));
+        chunkSize = 0;
+        chunkFrames = 0;
+        // The next chunk codes its field from 0 so it can be decoded on its own
+        fieldCols = 0;
+    }
+
+    private void ensure(int bytes) {
+        if (chunk.length - chunkSize < bytes) {
+            chunk = Arrays.copyOf(chunk, Math.max(chunk.length * 2, chunkSize + bytes));
+            chunkView = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+    }
+
+    private static int putVarint(byte[] out, int at, int value) {
+        while ((value & ~0x7f) != 0) {
+            out[at++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        out[at++] = (byte) value;
+        return at;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+}
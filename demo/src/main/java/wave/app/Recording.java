@@ -0,0 +1,235 @@
+package wave.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// A run captured by Recorder, read back frame by frame for replay. The file
+// is little-endian throughout:
+//
+//   header   int magic 'WAVR', int version, int framesPerChunk,
+//            int sceneBytes, the scene in SceneFile's binary format
+//   chunk    int payloadBytes, int frameCount, frames
+//   index    per chunk: long offset, int frameCount
+//   trailer  long indexOffset, int chunkCount, int magic
+//
+// A frame is one FrontSnapshot, quantised and delta coded:
+//   long stepCount, double time, varint count
+//   per point: zigzag varint dx, dy in 1/16 px from the previous point,
+//              byte amplitude (0..255), byte generation
+//   varint fieldCols (0: no field), then varint fieldRows, float cellSize and
+//   per cell the zigzag varint change of the value, in 1/256ths, since the
+//   previous field frame of the chunk (from 0 for the first one, or when the
+//   grid size changed)
+//
+// Chunks only depend on themselves, so seeking decodes at most one chunk. A
+// file whose recorder never closed has no index; it is rebuilt by walking the
+// chunks.
+public class Recording implements AutoCloseable {
+    static final int MAGIC = 0x57415652; // "WAVR"
+    static final int VERSION = 1;
+    static final float POSITION_STEPS = 16f;
+    static final float FIELD_STEPS = 256f;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer scene;
+    private long[] chunkOffset;
+    private long[] chunkFirstFrame;
+    private int frameCount;
+
+    // Decoder position: the chunk currently mapped and the last frame decoded
+    private int loadedChunk = -1;
+    private ByteBuffer chunkData;
+    private long decodedFrame = -1;
+    private int[] field = new int[0];
+    private int fieldCols, fieldRows;
+
+    public Recording(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, 16);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(path + ": not a recording");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(path + ": unsupported recording version " + header.getInt(4));
+            }
+            int sceneBytes = header.getInt(12);
+            scene = read(16, sceneBytes);
+            if (!readIndex()) {
+                scanChunks(16 + sceneBytes);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int frameCount() {
+        return frameCount;
+    }
+
+    // Replaces the engine's walls and sources with the recorded scene
+    public void loadScene(WaveEngine engine) throws IOException {
+        SceneFile.decode(scene.duplicate(), engine, path.toString());
+    }
+
+    // Decodes frame number frame (0-based) into the snapshot. Reading frames
+    // in order decodes each one once; seeking backwards or to another chunk
+    // restarts from the start of that chunk.
+    public FrontSnapshot read(int frame, FrontSnapshot into) throws IOException {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("frame " + frame + " of " + frameCount);
+        }
+        FrontSnapshot snapshot = into != null ? into : new FrontSnapshot();
+        int chunk = Arrays.binarySearch(chunkFirstFrame, frame);
+        if (chunk < 0) {
+            chunk = -chunk - 2;
+        }
+        if (chunk != loadedChunk || frame <= decodedFrame) {
+            long offset = chunkOffset[chunk];
+            int payload = read(offset, 8).getInt(0);
+            chunkData = channel.map(FileChannel.MapMode.READ_ONLY, offset + 8, payload)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            loadedChunk = chunk;
+            decodedFrame = chunkFirstFrame[chunk] - 1;
+            fieldCols = 0;
+        }
+        while (decodedFrame < frame) {
+            decodeFrame(chunkData, snapshot);
+            decodedFrame++;
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void decodeFrame(ByteBuffer in, FrontSnapshot into) {
+        into.stepCount = in.getLong();
+        into.time = in.getDouble();
+        int count = readVarint(in);
+        into.ensureCapacity(count);
+        int x = 0, y = 0;
+        for (int i = 0; i < count; i++) {
+            x += unzigzag(readVarint(in));
+            y += unzigzag(readVarint(in));
+            into.x[i] = x / POSITION_STEPS;
+            into.y[i] = y / POSITION_STEPS;
+            into.amplitude[i] = (in.get() & 0xff) / 255f;
+            into.generation[i] = in.get() & 0xff;
+        }
+        into.count = count;
+
+        int cols = readVarint(in);
+        into.fieldCols = cols;
+        if (cols == 0) {
+            return;
+        }
+        int rows = readVarint(in);
+        into.fieldRows = rows;
+        into.fieldCellSize = in.getFloat();
+        int cells = cols * rows;
+        if (cols != fieldCols || rows != fieldRows) {
+            // New chunk or resized grid: the values are coded from 0
+            if (field.length < cells) {
+                field = new int[cells];
+            }
+            Arrays.fill(field, 0, cells, 0);
+            fieldCols = cols;
+            fieldRows = rows;
+        }
+        into.ensureFieldCapacity(cells);
+        for (int i = 0; i < cells; i++) {
+            field[i] += unzigzag(readVarint(in));
+            into.field[i] = field[i] / FIELD_STEPS;
+        }
+    }
+
+    private boolean readIndex() throws IOException {
+        long size = channel.size();
+        if (size < 16) {
+            return false;
+        }
+        ByteBuffer trailer = read(size - 16, 16);
+        long indexOffset = trailer.getLong(0);
+        int chunkCount = trailer.getInt(8);
+        if (trailer.getInt(12) != MAGIC || chunkCount < 0 || indexOffset + chunkCount * 12L != size - 16) {
+            return false;
+        }
+        ByteBuffer index = read(indexOffset, chunkCount * 12);
+        chunkOffset = new long[chunkCount];
+        chunkFirstFrame = new long[chunkCount];
+        long frames = 0;
+        for (int c = 0; c < chunkCount; c++) {
+            chunkOffset[c] = index.getLong(c * 12);
+            chunkFirstFrame[c] = frames;
+            frames += index.getInt(c * 12 + 8);
+        }
+        frameCount = (int) frames;
+        return true;
+    }
+
+    // Recovers the chunk list of a recording that was cut off, dropping a
+    // partly written last chunk
+    private void scanChunks(long offset) throws IOException {
+        long size = channel.size();
+        long[] offsets = new long[16];
+        long[] firsts = new long[16];
+        int chunks = 0;
+        long frames = 0;
+        while (offset + 8 <= size) {
+            ByteBuffer head = read(offset, 8);
+            int payload = head.getInt(0);
+            int count = head.getInt(4);
+            if (payload < 0 || count <= 0 || offset + 8 + payload > size) {
+                break;
+            }
+            if (chunks == offsets.length) {
+                offsets = Arrays.copyOf(offsets, chunks * 2);
+                firsts = Arrays.copyOf(firsts, chunks * 2);
+            }
+            offsets[chunks] = offset;
+            firsts[chunks] = frames;
+            chunks++;
+            frames += count;
+            offset += 8 + payload;
+        }
+        chunkOffset = Arrays.copyOf(offsets, chunks);
+        chunkFirstFrame = Arrays.copyOf(firsts, chunks);
+        frameCount = (int) frames;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(path + ": truncated recording");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,33 @@
+package wave.app;
+
+import java.util.List;
+
+// The demo layout shown at startup, shared by the UI and the headless runner
+public class SampleScene {
+    public static void build(WaveEngine engine) {
+        for (Wall wall : walls()) {
+            engine.addWall(wall);
+        }
+        for (WaveSource source : sources()) {
+            engine.addSource(source);
+        }
+    }
+
+    // New walls on every call, as a scene holds its walls by identity
+    public static List<Wall> walls() {
+        return List.of(
+                // Different types of walls
+                new Wall(200, 100, 200, 500, WallType.SOLID), // Solid wall (white)
+                new Wall(600, 100, 600, 500, WallType.GLASS), // Glass (light blue)
+                new Wall(100, 300, 700, 300, WallType.WATER), // Water (cyan)
+                new Wall(400, 200, 400, 400, WallType.MIRROR), // Mirror (yellow)
+                new Wall(100, 500, 300, 300, WallType.ABSORBER), // Absorber (dark gray)
+                // A custom wall with specific values
+                new Wall(500, 500, 700, 500, WallType.CUSTOM, 0.4, 0.6));
+    }
+
+    // New sources on every call, as sources are moved in place
+    public static List<WaveSource> sources() {
+        return List.of(new WaveSource(300, 250), new WaveSource(500, 350));
+    }
+}
@@ -0,0 +1,94 @@
+package wave.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A batch of changes to the scene that WaveEngine.apply makes in one go: one
+// update of the wall grid, one reschedule of the event queue and one
+// rasterisation of the FDTD walls, however many walls it adds or removes.
+// Removals are applied first, then additions, then source moves.
+//
+// An edit keeps the walls and sources themselves rather than copies, so the
+// inverse of an applied edit puts back exactly the objects it took out; that
+// is all the undo history needs to store.
+public class SceneEdit {
+    final List<Wall> addedWalls = new ArrayList<>();
+    final List<Wall> removedWalls = new ArrayList<>();
+    final List<WaveSource> addedSources = new ArrayList<>();
+    final List<WaveSource> removedSources = new ArrayList<>();
+    final List<Move> moves = new ArrayList<>();
+
+    static class Move {
+        final WaveSource source;
+        final double fromX, fromY, toX, toY;
+
+        Move(WaveSource source, double fromX, double fromY, double toX, double toY) {
+            this.source = source;
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.toX = toX;
+            this.toY = toY;
+        }
+    }
+
+    public SceneEdit addWall(Wall wall) {
+        addedWalls.add(wall);
+        return this;
+    }
+
+    public SceneEdit addWalls(List<Wall> walls) {
+        addedWalls.addAll(walls);
+        return this;
+    }
+
+    public SceneEdit removeWall(Wall wall) {
+        removedWalls.add(wall);
+        return this;
+    }
+
+    public SceneEdit removeWalls(List<Wall> walls) {
+        removedWalls.addAll(walls);
+        return this;
+    }
+
+    public SceneEdit addSource(WaveSource source) {
+        addedSources.add(source);
+        return this;
+    }
+
+    public SceneEdit removeSource(WaveSource source) {
+        removedSources.add(source);
+        return this;
+    }
+
+    public SceneEdit removeSources(List<WaveSource> sources) {
+        removedSources.addAll(sources);
+        return this;
+    }
+
+    // The position it is moved from is only needed to undo the move
+    public SceneEdit moveSource(WaveSource source, double fromX, double fromY, double toX, double toY) {
+        moves.add(new Move(source, fromX, fromY, toX, toY));
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return addedWalls.isEmpty() && removedWalls.isEmpty() && addedSources.isEmpty()
+                && removedSources.isEmpty() && moves.isEmpty();
+    }
+
+    // The edit that undoes this one once it has been applied. Moves are
+    // reversed in reverse order, so a source moved twice ends where it began.
+    public SceneEdit inverse() {
+        SceneEdit inverse = new SceneEdit();
+        inverse.addedWalls.addAll(removedWalls);
+        inverse.removedWalls.addAll(addedWalls);
+        inverse.addedSources.addAll(removedSources);
+        inverse.removedSources.addAll(addedSources);
+        for (int i = moves.size() - 1; i >= 0; i--) {
+            Move move = moves.get(i);
+            inverse.moves.add(new Move(move.source, move.toX, move.toY, move.fromX, move.fromY));
+        }
+        return inverse;
+    }
+}
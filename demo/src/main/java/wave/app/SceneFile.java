@@ -0,0 +1,230 @@
+package wave.app;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Reads and writes scenes (walls and sources) so floor plans can be loaded
+// instead of drawn. Two formats:
+//
+// Binary, for large plans; little-endian fixed-size records, read through a
+// memory-mapped channel:
+//   header   int magic 'WAVS', int version, int wallCount, int sourceCount
+//   wall     double x1, y1, x2, y2, reflection, transmission; int type ordinal
+//   source   double x, y; int emitRate; double frequency, phase
+//            (version 1 files stop after emitRate)
+//
+// Text, for editing by hand; one element per line, '#' starts a comment:
+//   wall x1 y1 x2 y2 TYPE [reflection transmission]
+//   source x y [emitRate [frequency phase]]
+//
+// load() tells them apart by the magic number; save() writes text when the
+// file name ends in .txt and binary otherwise.
+public final class SceneFile {
+    private static final int MAGIC = 0x57415653; // "WAVS"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int WALL_BYTES = 6 * Double.BYTES + Integer.BYTES;
+    private static final int SOURCE_BYTES = 4 * Double.BYTES + Integer.BYTES;
+    private static final int SOURCE_BYTES_V1 = 2 * Double.BYTES + Integer.BYTES;
+
+    private SceneFile() {
+    }
+
+    // Replaces the engine's walls and sources with the file's
+    public static void load(Path path, WaveEngine engine) throws IOException {
+        if (isBinary(path)) {
+            readBinary(path, engine);
+        } else {
+            readText(path, engine);
+        }
+    }
+
+    public static void save(Path path, WaveEngine engine) throws IOException {
+        if (path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".txt")) {
+            writeText(path, engine);
+        } else {
+            writeBinary(path, engine);
+        }
+    }
+
+    static void readBinary(Path path, WaveEngine engine) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), engine, path.toString());
+        }
+    }
+
+    static void writeBinary(Path path, WaveEngine engine) throws IOException {
+        ByteBuffer buffer = encode(engine);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    // The binary scene as a buffer, ready to write; recordings embed it too
+    static ByteBuffer encode(WaveEngine engine) {
+        List<Wall> walls = engine.getWalls();
+        List<WaveSource> sources = engine.getSources();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + walls.size() * WALL_BYTES
+                + sources.size() * SOURCE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(walls.size()).putInt(sources.size());
+        for (Wall wall : walls) {
+            buffer.putDouble(wall.x1).putDouble(wall.y1).putDouble(wall.x2).putDouble(wall.y2)
+                    .putDouble(wall.getReflectionCoeff()).putDouble(wall.getTransmissionCoeff())
+                    .putInt(wall.type.ordinal());
+        }
+        for (WaveSource source : sources) {
+            buffer.putDouble(source.x).putDouble(source.y).putInt(source.emitRate)
+                    .putDouble(source.frequency).putDouble(source.phase);
+        }
+        return buffer.flip();
+    }
+
+    // Reads a binary scene starting at index 0 of the buffer; name is only
+    // used in error messages
+    static void decode(ByteBuffer map, WaveEngine engine, String name) throws IOException {
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        long size = map.limit();
+        if (size < HEADER_BYTES || map.getInt(0) != MAGIC) {
+            throw new IOException(name + ": not a scene file");
+        }
+        int version = map.getInt(4);
+        if (version != 1 && version != VERSION) {
+            throw new IOException(name + ": unsupported scene version " + version);
+        }
+        int sourceBytes = version == 1 ? SOURCE_BYTES_V1 : SOURCE_BYTES;
+        int wallCount = map.getInt(8);
+        int sourceCount = map.getInt(12);
+        if (wallCount < 0 || sourceCount < 0
+                || size < HEADER_BYTES + (long) wallCount * WALL_BYTES + (long) sourceCount * sourceBytes) {
+            throw new IOException(name + ": truncated scene file");
+        }
+
+        WallType[] types = WallType.values();
+        List<Wall> walls = new ArrayList<>(wallCount);
+        int at = HEADER_BYTES;
+        for (int i = 0; i < wallCount; i++, at += WALL_BYTES) {
+            int type = map.getInt(at + 6 * Double.BYTES);
+            if (type < 0 || type >= types.length) {
+                throw new IOException(name + ": wall " + i + " has unknown type " + type);
+            }
+            try {
+                walls.add(new Wall(map.getDouble(at), map.getDouble(at + 8),
+                        map.getDouble(at + 16), map.getDouble(at + 24), types[type],
+                        map.getDouble(at + 32), map.getDouble(at + 40)));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(name + ": wall " + i + ": " + e.getMessage(), e);
+            }
+        }
+
+        engine.clear();
+        engine.addWalls(walls);
+        for (int i = 0; i < sourceCount; i++, at += sourceBytes) {
+            WaveSource source = engine.addSource(map.getDouble(at), map.getDouble(at + 8));
+            source.emitRate = Math.max(1, map.getInt(at + 16));
+            if (version > 1) {
+                source.frequency = Math.max(0, map.getDouble(at + 20));
+                source.phase = map.getDouble(at + 28);
+            }
+        }
+    }
+
+    static void readText(Path path, WaveEngine engine) throws IOException {
+        List<Wall> walls = new ArrayList<>();
+        List<double[]> sources = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            String[] parts = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+            if (parts[0].isEmpty()) {
+                continue;
+            }
+            try {
+                switch (parts[0].toLowerCase(Locale.ROOT)) {
+                    case "wall" -> {
+                        if (parts.length != 6 && parts.length != 8) {
+                            throw new IOException("expected: wall x1 y1 x2 y2 TYPE [reflection transmission]");
+                        }
+                        WallType type = WallType.valueOf(parts[5].toUpperCase(Locale.ROOT));
+                        double reflection = parts.length == 8 ? Double.parseDouble(parts[6]) : type.getDefaultReflection();
+                        double transmission = parts.length == 8 ? Double.parseDouble(parts[7]) : type.getDefaultTransmission();
+                        walls.add(new Wall(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]),
+                                Double.parseDouble(parts[3]), Double.parseDouble(parts[4]),
+                                type, reflection, transmission));
+                    }
+                    case "source" -> {
+                        if (parts.length != 3 && parts.length != 4 && parts.length != 6) {
+                            throw new IOException("expected: source x y [emitRate [frequency phase]]");
+                        }
+                        sources.add(new double[] { Double.parseDouble(parts[1]), Double.parseDouble(parts[2]),
+                                parts.length >= 4 ? Integer.parseInt(parts[3]) : 5,
+                                parts.length == 6 ? Double.parseDouble(parts[4]) : 0,
+                                parts.length == 6 ? Double.parseDouble(parts[5]) : 0 });
+                    }
+                    default -> throw new IOException("unknown element '" + parts[0] + "'");
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IOException(path + ":" + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+
+        engine.clear();
+        engine.addWalls(walls);
+        for (double[] s : sources) {
+            WaveSource source = engine.addSource(s[0], s[1]);
+            source.emitRate = Math.max(1, (int) s[2]);
+            source.frequency = Math.max(0, s[3]);
+            source.phase = s[4];
+        }
+    }
+
+    static void writeText(Path path, WaveEngine engine) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("# wall x1 y1 x2 y2 TYPE [reflection transmission] (energy fractions, the rest absorbed)\n");
+            out.write("# source x y [emitRate [frequency phase]]\n");
+            for (Wall wall : engine.getWalls()) {
+                out.write(String.format(Locale.ROOT, "wall %s %s %s %s %s", num(wall.x1), num(wall.y1),
+                        num(wall.x2), num(wall.y2), wall.type.name()));
+                // Coefficients only when they differ from the type's defaults
+                if (wall.material != wall.type.getMaterial()) {
+                    out.write(" " + num(wall.getReflectionCoeff()) + " " + num(wall.getTransmissionCoeff()));
+                }
+                out.write('\n');
+            }
+            for (WaveSource source : engine.getSources()) {
+                out.write("source " + num(source.x) + " " + num(source.y) + " " + source.emitRate);
+                // Frequency and phase only when they differ from the defaults
+                if (source.frequency != 0 || source.phase != 0) {
+                    out.write(" " + num(source.frequency) + " " + num(source.phase));
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    private static boolean isBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            return channel.read(head, 0) == 4 && head.getInt(0) == MAGIC;
+        }
+    }
+
+    // Shortest text that reads back to the same double
+    private static String num(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : Double.toString(value);
+    }
+}
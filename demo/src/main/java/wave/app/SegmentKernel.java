@@ -0,0 +1,64 @@
+package wave.app;
+
+// Tests one step segment against a packed batch of walls at once. The walls
+// come as four coordinate arrays so an implementation can load several of
+// them into one SIMD register; this base class is the plain scalar loop and
+// the fallback when the incubating Vector API is not available.
+class SegmentKernel {
+    static final SegmentKernel SCALAR = new SegmentKernel();
+
+    // Picked once per run: the vector kernel when the JVM was started with
+    // --add-modules jdk.incubator.vector, unless -Dwave.scalar=true
+    static final SegmentKernel DEFAULT = create();
+
+    private static SegmentKernel create() {
+        if (Boolean.getBoolean("wave.scalar")
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (SegmentKernel) Class.forName("wave.app.VectorSegmentKernel")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    String name() {
+        return "scalar";
+    }
+
+    // Intersects (x1,y1)->(x2,y2) with walls [0, count) of the packed arrays.
+    // The index and segment position of each wall crossed are written to
+    // hitIndex and hitT, which must hold count entries; returns the number of
+    // hits, in wall order.
+    int intersect(double x1, double y1, double x2, double y2,
+            double[] wallX1, double[] wallY1, double[] wallX2, double[] wallY2, int count,
+            int[] hitIndex, double[] hitT) {
+        return intersectRange(x1, y1, x2, y2, wallX1, wallY1, wallX2, wallY2, 0, count, hitIndex, hitT, 0);
+    }
+
+    // Same arithmetic as WallGrid.intersect, so every kernel finds the same t
+    static int intersectRange(double x1, double y1, double x2, double y2,
+            double[] wallX1, double[] wallY1, double[] wallX2, double[] wallY2, int from, int to,
+            int[] hitIndex, double[] hitT, int hits) {
+        double sx = x1 - x2, sy = y1 - y2;
+        for (int k = from; k < to; k++) {
+            double x3 = wallX1[k], y3 = wallY1[k];
+            double wx = x3 - wallX2[k], wy = y3 - wallY2[k];
+            double denom = sx * wy - sy * wx;
+            if (denom == 0) {
+                continue;
+            }
+            double ex = x1 - x3, ey = y1 - y3;
+            double t = (ex * wy - ey * wx) / denom;
+            double u = -(sx * ey - sy * ex) / denom;
+            if (t >= 0 && t <= 1 && u >= 0 && u <= 1) {
+                hitIndex[hits] = k;
+                hitT[hits] = t;
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
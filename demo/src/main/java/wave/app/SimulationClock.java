@@ -0,0 +1,107 @@
+package wave.app;
+
+// Fixed-timestep driver for the engine. Real elapsed time (scaled by the
+// fast-forward multiplier) goes into an accumulator that is drained in whole
+// physics steps, so wave speed, emission and lifetimes no longer depend on the
+// display refresh rate. What is left over becomes the interpolation factor for
+// rendering between the last two physics states.
+public class SimulationClock {
+    private final double stepSeconds;
+    private int maxSubsteps = 8; // Per rendered frame at 1x; the rest is dropped
+    private double speed = 1.0;   // Fast-forward multiplier
+
+    private double accumulator = 0;
+    private long lastNanos = -1;
+    private double alpha = 1;
+    private int lastSteps = 0;
+    private long droppedSteps = 0;
+    private Recorder recorder; // Gets every step when set
+    private Runnable beforeStep; // E.g. to apply queued scene edits between steps
+
+    SimulationClock(double stepSeconds) {
+        this.stepSeconds = stepSeconds;
+    }
+
+    public double getStepSeconds() {
+        return stepSeconds;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(double speed) {
+        this.speed = Math.max(0, speed);
+    }
+
+    public int getMaxSubsteps() {
+        return maxSubsteps;
+    }
+
+    public void setMaxSubsteps(int maxSubsteps) {
+        this.maxSubsteps = Math.max(1, maxSubsteps);
+    }
+
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void setBeforeStep(Runnable beforeStep) {
+        this.beforeStep = beforeStep;
+    }
+
+    // Fraction of a step between the last physics state and now, in [0, 1)
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public int getLastSteps() {
+        return lastSteps;
+    }
+
+    // Steps skipped because the engine could not keep up
+    public long getDroppedSteps() {
+        return droppedSteps;
+    }
+
+    // Forget the last timestamp, e.g. after the animation was paused
+    public void reset() {
+        lastNanos = -1;
+        accumulator = 0;
+        alpha = 1;
+    }
+
+    // Runs as many fixed steps as the time since the last call allows and
+    // returns how many were run
+    public int advance(long nowNanos, WaveEngine engine) {
+        if (lastNanos < 0) {
+            lastNanos = nowNanos;
+            return lastSteps = 0;
+        }
+        double elapsed = (nowNanos - lastNanos) / 1e9;
+        lastNanos = nowNanos;
+        accumulator += Math.max(0, elapsed) * speed;
+
+        // Catch up, but never by more than the cap so a slow step can't snowball
+        int cap = maxSubsteps * (int) Math.ceil(Math.max(1, speed));
+        int steps = 0;
+        while (accumulator >= stepSeconds && steps < cap) {
+            if (beforeStep != null) {
+                beforeStep.run();
+            }
+            engine.step(stepSeconds);
+            if (recorder != null) {
+                recorder.record(engine);
+            }
+            accumulator -= stepSeconds;
+            steps++;
+        }
+        if (accumulator >= stepSeconds) {
+            long dropped = (long) (accumulator / stepSeconds);
+            droppedSteps += dropped;
+            accumulator -= dropped * stepSeconds;
+        }
+        alpha = accumulator / stepSeconds;
+        return lastSteps = steps;
+    }
+}
@@ -0,0 +1,145 @@
+package wave.app;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs the engine on its own thread so a slow step never holds up the FX
+// thread. The engine and clock belong to that thread alone once start() has
+// been called: the UI changes them only by submitting commands, which are
+// applied in order between steps, and reads the fronts only through the
+// snapshots published here.
+//
+// Snapshots go through three buffers: one being filled by the worker, one
+// held by the renderer, and one in between that each side swaps its own for.
+// The swap is a single atomic exchange, so neither side ever waits for the
+// other, and a buffer is never written while the renderer is reading it.
+public class SimulationWorker implements AutoCloseable {
+    private static final int FRESH = 4; // Set on the middle index when it is unread
+    private static final long NO_FRAME = Long.MIN_VALUE;
+
+    private final WaveEngine engine;
+    private final SimulationClock clock;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicLong frameRequest = new AtomicLong(NO_FRAME);
+    private volatile boolean stopping = false;
+    private volatile Viewport view; // Snapshots only cover this, plus a margin; null for everything
+
+    private final FrontSnapshot[] buffers = { new FrontSnapshot(), new FrontSnapshot(), new FrontSnapshot() };
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // Worker thread
+    private int front = 2; // Render thread
+
+    public SimulationWorker(WaveEngine engine, SimulationClock clock) {
+        this.engine = engine;
+        this.clock = clock;
+        clock.setBeforeStep(this::applyCommands);
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    // Queues a change to the engine or clock; it runs on the worker thread
+    // before the next step
+    public void submit(Runnable command) {
+        commands.add(command);
+        LockSupport.unpark(thread);
+    }
+
+    // Asks for the simulation to be brought up to the given time and a new
+    // snapshot published. Requests that arrive while a frame is still being
+    // stepped collapse into the latest one.
+    public void requestFrame(long nowNanos) {
+        frameRequest.set(nowNanos);
+        LockSupport.unpark(thread);
+    }
+
+    // Limits the published fronts to about what the given view shows, and
+    // has the engine keep the fronts that pass through it
+    public void setView(Viewport view) {
+        this.view = view;
+        double[] region = snapshotRegion(view);
+        submit(() -> engine.setViewRegion(region[0], region[1], region[2], region[3]));
+    }
+
+    // The newest published snapshot not yet taken, or null when nothing new
+    // has been published. It stays the caller's until the next call returns
+    // something else.
+    public FrontSnapshot takeSnapshot() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & ~FRESH;
+        return buffers[front];
+    }
+
+    // Stops after the commands already queued have run
+    @Override
+    public void close() {
+        stopping = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            boolean stop = stopping; // Anything queued before close() is run first
+            applyCommands();
+            if (stop) {
+                return;
+            }
+            long now = frameRequest.getAndSet(NO_FRAME);
+            if (now == NO_FRAME) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                clock.advance(now, engine);
+                snapshot(buffers[back]);
+            } catch (RuntimeException e) {
+                // Keep the thread alive, as the FX thread would after a failed pulse
+                Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(thread, e);
+                continue;
+            }
+            back = middle.getAndSet(back | FRESH) & ~FRESH;
+        }
+    }
+
+    private void snapshot(FrontSnapshot into) {
+        Viewport view = this.view;
+        if (view == null) {
+            engine.snapshot(into, clock.getAlpha());
+            return;
+        }
+        double[] region = snapshotRegion(view);
+        engine.snapshot(into, clock.getAlpha(), region[0], region[1], region[2], region[3]);
+    }
+
+    // The view with a quarter of it extra on each side, so a pan shows fronts
+    // at the new edges before the next snapshot arrives
+    private static double[] snapshotRegion(Viewport view) {
+        double marginX = (view.maxX() - view.minX()) / 4, marginY = (view.maxY() - view.minY()) / 4;
+        return new double[] { view.minX() - marginX, view.minY() - marginY,
+                view.maxX() + marginX, view.maxY() + marginY };
+    }
+
+    private void applyCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package wave.app;
+
+// Predicts at a wall hit whether a front about to be spawned can contribute
+// anything, so the solvers skip it instead of adding it only to remove it a
+// step later. A front is not worth spawning when the wall's coefficient and
+// one step of decay take it under WaveEngine.MIN_AMPLITUDE, or when it starts
+// outside the region of interest and its straight path never enters it before
+// the decay or the age limit ends it. The region covers the map, every wall
+// and what is on screen (WaveEngine.setViewRegion), so a front outside it has
+// nothing to hit on the way and is never seen either.
+//
+// Set up by the engine before each step and only read while stepping, so the
+// steppers of a parallel step share one.
+final class SpawnCulling {
+    double decay = 1;     // Amplitude kept per step
+    double distance;      // Travelled per step
+    double stepLimit;     // Steps a spawned front lives at most
+    double minX, minY, maxX, maxY; // Region of interest
+
+    // Fades out within its first step
+    boolean faint(double amplitude) {
+        return amplitude * decay < WaveEngine.MIN_AMPLITUDE;
+    }
+
+    boolean contains(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    // As below, for a heading given as an angle
+    boolean outside(double x, double y, double angle, double amplitude) {
+        return !contains(x, y) && outside(x, y, Math.cos(angle), Math.sin(angle), amplitude);
+    }
+
+    // Whether a front at (x, y) moving along the unit vector (dx, dy) stays
+    // outside the region for as long as it lives
+    boolean outside(double x, double y, double dx, double dy, double amplitude) {
+        if (contains(x, y)) {
+            return false;
+        }
+        double steps = stepLimit;
+        if (decay < 1) {
+            steps = Math.min(steps, Math.log(WaveEngine.MIN_AMPLITUDE / amplitude) / Math.log(decay));
+        }
+        // A step of slack so rounding never culls a front that just gets in
+        double reach = (Math.floor(steps) + 1) * distance;
+
+        // Clip [0, reach] along the ray against both slabs of the region
+        double t0 = 0, t1 = reach;
+        if (dx == 0) {
+            if (x < minX || x > maxX) {
+                return true;
+            }
+        } else {
+            double a = (minX - x) / dx, b = (maxX - x) / dx;
+            t0 = Math.max(t0, Math.min(a, b));
+            t1 = Math.min(t1, Math.max(a, b));
+        }
+        if (dy == 0) {
+            if (y < minY || y > maxY) {
+                return true;
+            }
+        } else {
+            double a = (minY - y) / dy, b = (maxY - y) / dy;
+            t0 = Math.max(t0, Math.min(a, b));
+            t1 = Math.min(t1, Math.max(a, b));
+        }
+        return t0 > t1;
+    }
+}
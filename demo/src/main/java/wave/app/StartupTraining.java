@@ -0,0 +1,41 @@
+package wave.app;
+
+import javafx.application.Application;
+
+// Training run for the class-data-sharing archive of the runtime image (the
+// image profile in pom.xml): the image build runs this with
+// -XX:DumpLoadedClassList and archives every class it loaded, so a real start
+// maps them in instead of loading and verifying them one by one.
+//
+// Steps the sample scene headless in every physics mode, then shows the UI
+// for a few seconds. On a machine without a display the UI part fails and
+// only the engine side gets trained; the image still works, it just starts
+// slower until it is built where there is a display.
+public class StartupTraining {
+    private static final int STEPS_PER_MODE = 120;
+    private static final int UI_FRAMES = 300; // About five seconds at 60 Hz
+
+    public static void main(String[] args) {
+        for (PhysicsMode mode : PhysicsMode.values()) {
+            WaveEngine engine = new WaveEngine();
+            engine.getMetrics().register(); // As the UI does on start
+            SampleScene.build(engine);
+            engine.setMode(mode);
+            engine.setHeatmapMode(HeatmapMode.INTENSITY);
+            FrontSnapshot snapshot = new FrontSnapshot();
+            for (int i = 0; i < STEPS_PER_MODE; i++) {
+                engine.step(WaveEngine.REFERENCE_DT);
+                snapshot = engine.snapshot(snapshot);
+            }
+            engine.getMetrics().unregister();
+            engine.freeFronts();
+        }
+        try {
+            Application.launch(WaveSimulation.class, "--exit-after-frames=" + UI_FRAMES);
+        } catch (RuntimeException e) {
+            System.err.println("UI not trained, only the engine: " + e.getMessage());
+        }
+        // The UI may leave non-daemon threads behind
+        System.exit(0);
+    }
+}
@@ -0,0 +1,60 @@
+package wave.app;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Once-a-second summary of the engine for flight recordings. It is emitted by
+// a periodic hook, so stepping never creates events itself.
+@Name("wave.app.StepMetrics")
+@Label("Wave Step Metrics")
+@Category("Wave Simulation")
+@Description("Step timing and front counts over the last period")
+@Period("1 s")
+@StackTrace(false)
+class StepMetricsEvent extends Event {
+    @Label("Steps")
+    long steps;
+
+    @Label("Step p50")
+    @Timespan(Timespan.NANOSECONDS)
+    long stepP50;
+
+    @Label("Step p99")
+    @Timespan(Timespan.NANOSECONDS)
+    long stepP99;
+
+    @Label("Step Max")
+    @Timespan(Timespan.NANOSECONDS)
+    long stepMax;
+
+    @Label("Live Fronts")
+    int liveFronts;
+
+    @Label("Spawned")
+    long spawned;
+
+    @Label("Removed")
+    long removed;
+
+    @Label("Merged or Culled")
+    @Description("Fronts removed to keep within the front budget")
+    long culled;
+
+    @Label("Pruned")
+    @Description("Fronts collisions did not spawn because they could not contribute")
+    long pruned;
+
+    @Label("Collisions")
+    long collisions;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
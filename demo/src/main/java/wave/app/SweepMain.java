@@ -0,0 +1,92 @@
+package wave.app;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Batch runner for tuning materials: runs a scene (the sample layout by
+// default) for every combination of the given parameter values, in parallel,
+// and writes one CSV row per run. For example
+//   java -cp target/classes wave.app.SweepMain --scene plan.wave --steps 600
+//       --param GLASS.reflection=0.1:0.9:9 --param waveSpeed=1,2,4
+//       --target lobby=100,100,300,250 --out sweep.csv
+// Parameters are waveSpeed, emitRate, attenuation, maxReflections,
+// maxGeneration, TYPE.reflection, TYPE.transmission and TYPE.maxGeneration
+// (e.g. SOLID.reflection), and wallN.reflection and wallN.transmission for
+// the Nth wall in the scene file. Coefficients are energy fractions, and a
+// run whose reflection and transmission add up to more than 1 fails. Each --target adds
+// the energy that reached that rectangle over the run as a column. --series
+// also writes the front count and target energies every --sample steps.
+public class SweepMain {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        FrontStorage storage = FrontStorage.DEFAULT;
+        Path scenePath = null;
+        Path out = Path.of("sweep.csv");
+        Path series = null;
+        PhysicsMode mode = PhysicsMode.RAYS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int budget = 0;
+        List<String> parameters = new ArrayList<>();
+        List<String> targets = new ArrayList<>();
+        int steps = 1000;
+        int sampleEvery = 10;
+        double dt = WaveEngine.REFERENCE_DT;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--scene" -> scenePath = Path.of(args[++i]);
+                case "--param" -> parameters.add(args[++i]);
+                case "--target" -> targets.add(args[++i]);
+                case "--steps" -> steps = Integer.parseInt(args[++i]);
+                case "--dt" -> dt = Double.parseDouble(args[++i]);
+                case "--mode" -> mode = PhysicsMode.valueOf(args[++i].toUpperCase());
+                case "--budget" -> budget = Integer.parseInt(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--out" -> out = Path.of(args[++i]);
+                case "--series" -> series = Path.of(args[++i]);
+                case "--sample" -> sampleEvery = Integer.parseInt(args[++i]);
+                case "--fronts" -> storage = FrontStorage.parse(args[++i]);
+                default -> {
+                    System.err.println("Usage: SweepMain [--scene FILE] --param NAME=V1,V2,...|NAME=FROM:TO:COUNT ..."
+                            + " [--target NAME=X1,Y1,X2,Y2 ...] [--steps N] [--dt SECONDS]"
+                            + " [--mode rays|events|arcs|fdtd] [--budget FRONTS] [--threads N]"
+                            + " [--out FILE] [--series FILE] [--sample STEPS] [--fronts heap|offheap|offheap32]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        WaveEngine scene = new WaveEngine(storage);
+        if (scenePath == null) {
+            SampleScene.build(scene);
+        } else {
+            SceneFile.load(scenePath, scene);
+        }
+        scene.setMode(mode);
+        scene.setFrontBudget(budget);
+        ParameterSweep sweep = new ParameterSweep(scene);
+        try {
+            for (String parameter : parameters) {
+                sweep.addParameter(ParameterSweep.Parameter.parse(parameter));
+            }
+            for (String target : targets) {
+                sweep.addTarget(ParameterSweep.Target.parse(target));
+            }
+            sweep.runCount();
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        sweep.steps = steps;
+        sweep.dt = dt;
+        sweep.sampleEvery = series == null ? 0 : sampleEvery;
+
+        long start = System.nanoTime();
+        int failed = sweep.runAll(threads, out, series);
+        System.out.printf("sweep:          %d runs of %d steps, %d failed, %.1f s on %d threads (%s)%n",
+                sweep.runCount(), steps, failed, (System.nanoTime() - start) / 1e9, threads, out);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package wave.app;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD version of SegmentKernel: one segment against a register's worth of
+// walls per iteration, with the remainder done by the scalar loop. Only
+// loaded through SegmentKernel.DEFAULT when jdk.incubator.vector is present.
+final class VectorSegmentKernel extends SegmentKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    String name() {
+        return "vector-" + SPECIES.length();
+    }
+
+    @Override
+    int intersect(double x1, double y1, double x2, double y2,
+            double[] wallX1, double[] wallY1, double[] wallX2, double[] wallY2, int count,
+            int[] hitIndex, double[] hitT) {
+        double sx = x1 - x2, sy = y1 - y2;
+        int hits = 0;
+        int bound = SPECIES.loopBound(count);
+        for (int k = 0; k < bound; k += SPECIES.length()) {
+            DoubleVector x3 = DoubleVector.fromArray(SPECIES, wallX1, k);
+            DoubleVector y3 = DoubleVector.fromArray(SPECIES, wallY1, k);
+            DoubleVector wx = x3.sub(DoubleVector.fromArray(SPECIES, wallX2, k));
+            DoubleVector wy = y3.sub(DoubleVector.fromArray(SPECIES, wallY2, k));
+            DoubleVector denom = wy.mul(sx).sub(wx.mul(sy));
+            DoubleVector ex = x3.neg().add(x1);
+            DoubleVector ey = y3.neg().add(y1);
+            DoubleVector t = ex.mul(wy).sub(ey.mul(wx)).div(denom);
+            DoubleVector u = ey.mul(sx).sub(ex.mul(sy)).neg().div(denom);
+
+            // NaN and infinite lanes (denom == 0) fail these comparisons too,
+            // but the explicit test keeps it identical to the scalar path
+            VectorMask<Double> crossed = denom.compare(VectorOperators.NE, 0)
+                    .and(t.compare(VectorOperators.GE, 0))
+                    .and(t.compare(VectorOperators.LE, 1))
+                    .and(u.compare(VectorOperators.GE, 0))
+                    .and(u.compare(VectorOperators.LE, 1));
+            // Hits are rare, so they are pulled out lane by lane
+            for (long bits = crossed.toLong(); bits != 0; bits &= bits - 1) {
+                int lane = Long.numberOfTrailingZeros(bits);
+                hitIndex[hits] = k + lane;
+                hitT[hits] = t.lane(lane);
+                hits++;
+            }
+        }
+        return intersectRange(x1, y1, x2, y2, wallX1, wallY1, wallX2, wallY2, bound, count, hitIndex, hitT, hits);
+    }
+}
@@ -0,0 +1,82 @@
+package wave.app;
+
+// Which part of the world is on screen: the world point at the top-left corner
+// of the map and the zoom, in screen pixels per world pixel. The physics keeps
+// running on the whole world; only drawing (and the snapshot copy feeding it)
+// is limited to what this covers.
+class Viewport {
+    static final double MIN_SCALE = 0.02, MAX_SCALE = 16;
+
+    final double originX, originY;
+    final double scale;
+    final int width, height; // Screen pixels
+
+    Viewport(double originX, double originY, double scale, int width, int height) {
+        this.originX = originX;
+        this.originY = originY;
+        this.scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale));
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+    }
+
+    static Viewport identity(int width, int height) {
+        return new Viewport(0, 0, 1, width, height);
+    }
+
+    double toScreenX(double worldX) {
+        return (worldX - originX) * scale;
+    }
+
+    double toScreenY(double worldY) {
+        return (worldY - originY) * scale;
+    }
+
+    double toWorldX(double screenX) {
+        return originX + screenX / scale;
+    }
+
+    double toWorldY(double screenY) {
+        return originY + screenY / scale;
+    }
+
+    // World bounds of the visible area
+    double minX() {
+        return originX;
+    }
+
+    double minY() {
+        return originY;
+    }
+
+    double maxX() {
+        return originX + width / scale;
+    }
+
+    double maxY() {
+        return originY + height / scale;
+    }
+
+    Viewport resized(int width, int height) {
+        return new Viewport(originX, originY, scale, width, height);
+    }
+
+    // Moves the view by a drag of (dx, dy) screen pixels
+    Viewport panned(double dx, double dy) {
+        return new Viewport(originX - dx / scale, originY - dy / scale, scale, width, height);
+    }
+
+    // Zooms by factor, keeping the world point under (screenX, screenY) still
+    Viewport zoomed(double factor, double screenX, double screenY) {
+        double worldX = toWorldX(screenX), worldY = toWorldY(screenY);
+        double scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, this.scale * factor));
+        return new Viewport(worldX - screenX / scale, worldY - screenY / scale, scale, width, height);
+    }
+
+    // The whole of the given world rectangle, centred, with a small margin
+    Viewport fitted(double minX, double minY, double maxX, double maxY) {
+        double w = Math.max(1, maxX - minX), h = Math.max(1, maxY - minY);
+        double scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, 0.95 * Math.min(width / w, height / h)));
+        return new Viewport((minX + maxX) / 2 - width / (2 * scale), (minY + maxY) / 2 - height / (2 * scale),
+                scale, width, height);
+    }
+}
@@ -1,29 +1,32 @@
 package wave.app;
 
-import wave.app.WallType;
-import javafx.scene.paint.Color;
-
 public class Wall {
     double x1, y1, x2, y2;
     double normalX, normalY;
     double length;
     WallType type;
-    double customReflection;  // For custom adjustments
-    double customTransmission; // For custom adjustments
+    Material material; // The type's, or the wall's own for custom adjustments
     
     Wall(double x1, double y1, double x2, double y2, WallType type) {
-        this(x1, y1, x2, y2, type, type.getDefaultReflection(), type.getDefaultTransmission());
+        this(x1, y1, x2, y2, type, type.getMaterial());
     }
     
+    // Absorbs whatever is neither reflected nor transmitted; throws when the
+    // two add up to more than 1
     Wall(double x1, double y1, double x2, double y2, WallType type, 
          double customReflection, double customTransmission) {
+        this(x1, y1, x2, y2, type, customReflection == type.getDefaultReflection()
+                && customTransmission == type.getDefaultTransmission()
+                ? type.getMaterial() : Material.of(customReflection, customTransmission));
+    }
+    
+    Wall(double x1, double y1, double x2, double y2, WallType type, Material material) {
         this.x1 = x1;
         this.y1 = y1;
         this.x2 = x2;
         this.y2 = y2;
         this.type = type;
-        this.customReflection = customReflection;
-        this.customTransmission = customTransmission;
+        this.material = material;
         
         // Calculate wall vector and normal
         double dx = x2 - x1;
@@ -36,14 +39,14 @@ public class Wall {
     }
     
     public double getReflectionCoeff() {
-        return customReflection;
+        return material.reflection;
     }
     
     public double getTransmissionCoeff() {
-        return customTransmission;
+        return material.transmission;
     }
     
-    public Color getColor() {
-        return type.getColor();
+    public double getAbsorptionCoeff() {
+        return material.absorption;
     }
 }
@@ -0,0 +1,416 @@
+package wave.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+// Uniform grid over the wall segments so a collision query only looks at the
+// walls in the cells a step segment actually crosses, instead of every wall.
+// Walls are inserted incrementally; the grid only rebuilds itself when a new
+// wall falls outside the area it currently covers. Removed walls are taken
+// out of their cells and leave a gap in the wall list, which is closed up by
+// the next rebuild once gaps make up half of it. Each cell also keeps its
+// walls' end points packed in coordinate arrays, which SegmentKernel tests in
+// one batch.
+//
+// Grids for the same segments can share their cells (see withWalls), e.g.
+// across the runs of a parameter sweep. Shared cells are never written: the
+// next wall added to either grid makes it build cells of its own.
+public class WallGrid {
+    // Keeps memory bounded for huge floor plans: the cell size doubles instead
+    private static final int MAX_CELLS = 1 << 20;
+
+    private final double baseCellSize;
+    private double cellSize;
+    private double originX, originY;
+    private int cols, rows;
+    private int[][] cells = new int[0][];
+    private int[] cellCounts = new int[0];
+    private double[][] cellX1 = new double[0][], cellY1 = new double[0][];
+    private double[][] cellX2 = new double[0][], cellY2 = new double[0][];
+    private final List<Wall> walls = new ArrayList<>(); // Null where a wall was removed
+    private int removed = 0;
+    private final SegmentKernel kernel;
+    private boolean shared = false; // Cells also used by another grid
+
+    // Result of a query; reused by the caller so queries do not allocate
+    public static class Hit {
+        Wall wall;
+        double t; // Position along the query segment, 0..1
+
+        // Kernel output for one cell, sized to the fullest cell seen
+        private int[] hitIndex = new int[8];
+        private double[] hitT = new double[8];
+    }
+
+    WallGrid(double cellSize) {
+        this(cellSize, SegmentKernel.DEFAULT);
+    }
+
+    WallGrid(double cellSize, SegmentKernel kernel) {
+        this.baseCellSize = cellSize;
+        this.cellSize = cellSize;
+        this.kernel = kernel;
+    }
+
+    public int wallCount() {
+        return walls.size() - removed;
+    }
+
+    void add(Wall wall) {
+        walls.add(wall);
+        if (!fits(wall)) {
+            rebuild();
+        } else {
+            insert(walls.size() - 1);
+        }
+    }
+
+    // Inserts the walls into the cells they cover when they all lie inside
+    // the grid, and rebuilds it once otherwise
+    void addAll(List<Wall> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        int first = walls.size();
+        walls.addAll(added);
+        for (Wall wall : added) {
+            if (!fits(wall)) {
+                rebuild();
+                return;
+            }
+        }
+        for (int i = first; i < walls.size(); i++) {
+            insert(i);
+        }
+    }
+
+    private boolean fits(Wall wall) {
+        return cols > 0 && !shared
+                && Math.min(wall.x1, wall.x2) >= originX && Math.min(wall.y1, wall.y2) >= originY
+                && Math.max(wall.x1, wall.x2) < originX + cols * cellSize
+                && Math.max(wall.y1, wall.y2) < originY + rows * cellSize;
+    }
+
+    // Takes the given walls out of the cells they were in
+    void removeAll(Set<Wall> gone) {
+        if (gone.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < walls.size(); i++) {
+            Wall wall = walls.get(i);
+            if (wall != null && gone.contains(wall)) {
+                if (!shared) {
+                    uninsert(i);
+                }
+                walls.set(i, null);
+                removed++;
+            }
+        }
+        if (shared || removed * 2 > walls.size()) {
+            rebuild();
+        }
+    }
+
+    // A grid over the given walls, which must be the same segments as this
+    // grid's in the same order, e.g. copies with other coefficients. It uses
+    // this grid's cells instead of building its own, so queries on it return
+    // the given walls at no cost in memory or setup.
+    WallGrid withWalls(List<Wall> replacements) {
+        if (removed > 0) {
+            rebuild();
+        }
+        if (replacements.size() != walls.size()) {
+            throw new IllegalArgumentException("expected " + walls.size() + " walls, got " + replacements.size());
+        }
+        for (int i = 0; i < walls.size(); i++) {
+            Wall a = walls.get(i), b = replacements.get(i);
+            if (a.x1 != b.x1 || a.y1 != b.y1 || a.x2 != b.x2 || a.y2 != b.y2) {
+                throw new IllegalArgumentException("wall " + i + " is not the same segment");
+            }
+        }
+        WallGrid copy = new WallGrid(baseCellSize, kernel);
+        copy.walls.addAll(replacements);
+        copy.cellSize = cellSize;
+        copy.originX = originX;
+        copy.originY = originY;
+        copy.cols = cols;
+        copy.rows = rows;
+        copy.cells = cells;
+        copy.cellCounts = cellCounts;
+        copy.cellX1 = cellX1;
+        copy.cellY1 = cellY1;
+        copy.cellX2 = cellX2;
+        copy.cellY2 = cellY2;
+        copy.shared = true;
+        shared = true;
+        return copy;
+    }
+
+    void clear() {
+        walls.clear();
+        removed = 0;
+        cellSize = baseCellSize;
+        cols = 0;
+        rows = 0;
+        allocateCells(0);
+    }
+
+    // Finds the wall the segment (x0,y0)->(x1,y1) hits first. Cells are visited
+    // in order along the segment, so the walk stops as soon as a hit lies
+    // before the exit of the current cell.
+    boolean firstHit(double x0, double y0, double x1, double y1, Hit hit) {
+        return firstHit(x0, y0, x1, y1, null, hit);
+    }
+
+    // As above, skipping one wall (e.g. the one a spawned front starts on)
+    boolean firstHit(double x0, double y0, double x1, double y1, Wall ignore, Hit hit) {
+        if (cols == 0) {
+            return false;
+        }
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+
+        // Clip the segment against the grid bounds
+        double tMin = 0, tMax = 1;
+        double maxX = originX + cols * cellSize;
+        double maxY = originY + rows * cellSize;
+        if (dx == 0) {
+            if (x0 < originX || x0 >= maxX) return false;
+        } else {
+            double ta = (originX - x0) / dx;
+            double tb = (maxX - x0) / dx;
+            tMin = Math.max(tMin, Math.min(ta, tb));
+            tMax = Math.min(tMax, Math.max(ta, tb));
+        }
+        if (dy == 0) {
+            if (y0 < originY || y0 >= maxY) return false;
+        } else {
+            double ta = (originY - y0) / dy;
+            double tb = (maxY - y0) / dy;
+            tMin = Math.max(tMin, Math.min(ta, tb));
+            tMax = Math.min(tMax, Math.max(ta, tb));
+        }
+        if (tMin > tMax) {
+            return false;
+        }
+
+        int cx = clamp((int) Math.floor((x0 + tMin * dx - originX) / cellSize), cols);
+        int cy = clamp((int) Math.floor((y0 + tMin * dy - originY) / cellSize), rows);
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        double tDeltaX = dx == 0 ? Double.POSITIVE_INFINITY : cellSize / Math.abs(dx);
+        double tDeltaY = dy == 0 ? Double.POSITIVE_INFINITY : cellSize / Math.abs(dy);
+        double tNextX = dx == 0 ? Double.POSITIVE_INFINITY
+                : (originX + (cx + (dx > 0 ? 1 : 0)) * cellSize - x0) / dx;
+        double tNextY = dy == 0 ? Double.POSITIVE_INFINITY
+                : (originY + (cy + (dy > 0 ? 1 : 0)) * cellSize - y0) / dy;
+
+        Wall best = null;
+        double bestT = Double.POSITIVE_INFINITY;
+        while (true) {
+            int cell = cy * cols + cx;
+            int n = cellCounts[cell];
+            if (n > 0) {
+                if (hit.hitIndex.length < n) {
+                    hit.hitIndex = new int[n];
+                    hit.hitT = new double[n];
+                }
+                int hits = kernel.intersect(x0, y0, x1, y1,
+                        cellX1[cell], cellY1[cell], cellX2[cell], cellY2[cell], n, hit.hitIndex, hit.hitT);
+                int[] list = cells[cell];
+                for (int h = 0; h < hits; h++) {
+                    double t = hit.hitT[h];
+                    Wall wall = walls.get(list[hit.hitIndex[h]]);
+                    if (t < bestT && wall != ignore) {
+                        bestT = t;
+                        best = wall;
+                    }
+                }
+            }
+
+            double tExit = Math.min(tNextX, tNextY);
+            if (bestT <= tExit || tExit > tMax) {
+                break;
+            }
+            if (tNextX < tNextY) {
+                cx += stepX;
+                if (cx < 0 || cx >= cols) break;
+                tNextX += tDeltaX;
+            } else {
+                cy += stepY;
+                if (cy < 0 || cy >= rows) break;
+                tNextY += tDeltaY;
+            }
+        }
+
+        if (best == null) {
+            return false;
+        }
+        hit.wall = best;
+        hit.t = bestT;
+        return true;
+    }
+
+    // Segment/wall intersection. Returns the position along the segment
+    // (x1,y1)->(x2,y2) in [0, 1], or -1 when they do not cross.
+    static double intersect(double x1, double y1, double x2, double y2, Wall wall) {
+        double x3 = wall.x1, y3 = wall.y1, x4 = wall.x2, y4 = wall.y2;
+        double denom = (x1 - x2) * (y3 - y4) - (y1 - y2) * (x3 - x4);
+        if (denom == 0)
+            return -1;
+
+        double t = ((x1 - x3) * (y3 - y4) - (y1 - y3) * (x3 - x4)) / denom;
+        double u = -((x1 - x2) * (y1 - y3) - (y1 - y2) * (x1 - x3)) / denom;
+
+        if (t >= 0 && t <= 1 && u >= 0 && u <= 1) {
+            return t;
+        }
+        return -1;
+    }
+
+    private void rebuild() {
+        if (removed > 0) {
+            walls.removeIf(wall -> wall == null);
+            removed = 0;
+        }
+        if (walls.isEmpty()) {
+            cellSize = baseCellSize;
+            cols = 0;
+            rows = 0;
+            allocateCells(0);
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Wall wall : walls) {
+            minX = Math.min(minX, Math.min(wall.x1, wall.x2));
+            minY = Math.min(minY, Math.min(wall.y1, wall.y2));
+            maxX = Math.max(maxX, Math.max(wall.x1, wall.x2));
+            maxY = Math.max(maxY, Math.max(wall.y1, wall.y2));
+        }
+        // Leave headroom so walls drawn just outside don't force another rebuild
+        double marginX = Math.max(baseCellSize, (maxX - minX) * 0.25);
+        double marginY = Math.max(baseCellSize, (maxY - minY) * 0.25);
+        minX -= marginX;
+        minY -= marginY;
+        maxX += marginX;
+        maxY += marginY;
+
+        cellSize = baseCellSize;
+        while ((long) cellsAlong(maxX - minX) * cellsAlong(maxY - minY) > MAX_CELLS) {
+            cellSize *= 2;
+        }
+        originX = minX;
+        originY = minY;
+        cols = cellsAlong(maxX - minX);
+        rows = cellsAlong(maxY - minY);
+        allocateCells(cols * rows);
+        for (int i = 0; i < walls.size(); i++) {
+            insert(i);
+        }
+    }
+
+    private void allocateCells(int count) {
+        shared = false;
+        cells = new int[count][];
+        cellCounts = new int[count];
+        cellX1 = new double[count][];
+        cellY1 = new double[count][];
+        cellX2 = new double[count][];
+        cellY2 = new double[count][];
+    }
+
+    private int cellsAlong(double extent) {
+        return Math.max(1, (int) Math.ceil(extent / cellSize));
+    }
+
+    // Adds the wall to every cell whose box the segment touches
+    private void insert(int index) {
+        Wall wall = walls.get(index);
+        int cx0 = clamp((int) Math.floor((Math.min(wall.x1, wall.x2) - originX) / cellSize), cols);
+        int cx1 = clamp((int) Math.floor((Math.max(wall.x1, wall.x2) - originX) / cellSize), cols);
+        int cy0 = clamp((int) Math.floor((Math.min(wall.y1, wall.y2) - originY) / cellSize), rows);
+        int cy1 = clamp((int) Math.floor((Math.max(wall.y1, wall.y2) - originY) / cellSize), rows);
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                if (cx0 == cx1 || cy0 == cy1 || touchesCell(wall, cx, cy)) {
+                    int cell = cy * cols + cx;
+                    if (cells[cell] == null) {
+                        cells[cell] = new int[4];
+                        cellX1[cell] = new double[4];
+                        cellY1[cell] = new double[4];
+                        cellX2[cell] = new double[4];
+                        cellY2[cell] = new double[4];
+                    } else if (cellCounts[cell] == cells[cell].length) {
+                        int grown = cells[cell].length * 2;
+                        cells[cell] = Arrays.copyOf(cells[cell], grown);
+                        cellX1[cell] = Arrays.copyOf(cellX1[cell], grown);
+                        cellY1[cell] = Arrays.copyOf(cellY1[cell], grown);
+                        cellX2[cell] = Arrays.copyOf(cellX2[cell], grown);
+                        cellY2[cell] = Arrays.copyOf(cellY2[cell], grown);
+                    }
+                    int k = cellCounts[cell]++;
+                    cells[cell][k] = index;
+                    cellX1[cell][k] = wall.x1;
+                    cellY1[cell][k] = wall.y1;
+                    cellX2[cell][k] = wall.x2;
+                    cellY2[cell][k] = wall.y2;
+                }
+            }
+        }
+    }
+
+    // Takes the wall out of every cell it was added to, keeping the order of
+    // the others
+    private void uninsert(int index) {
+        Wall wall = walls.get(index);
+        int cx0 = clamp((int) Math.floor((Math.min(wall.x1, wall.x2) - originX) / cellSize), cols);
+        int cx1 = clamp((int) Math.floor((Math.max(wall.x1, wall.x2) - originX) / cellSize), cols);
+        int cy0 = clamp((int) Math.floor((Math.min(wall.y1, wall.y2) - originY) / cellSize), rows);
+        int cy1 = clamp((int) Math.floor((Math.max(wall.y1, wall.y2) - originY) / cellSize), rows);
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int cell = cy * cols + cx;
+                int n = cellCounts[cell];
+                for (int k = 0; k < n; k++) {
+                    if (cells[cell][k] == index) {
+                        int tail = n - k - 1;
+                        System.arraycopy(cells[cell], k + 1, cells[cell], k, tail);
+                        System.arraycopy(cellX1[cell], k + 1, cellX1[cell], k, tail);
+                        System.arraycopy(cellY1[cell], k + 1, cellY1[cell], k, tail);
+                        System.arraycopy(cellX2[cell], k + 1, cellX2[cell], k, tail);
+                        System.arraycopy(cellY2[cell], k + 1, cellY2[cell], k, tail);
+                        cellCounts[cell] = n - 1;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    // Slab test of the wall segment against a (slightly padded) cell box
+    private boolean touchesCell(Wall wall, int cx, int cy) {
+        double pad = cellSize * 1e-6;
+        double boxMinX = originX + cx * cellSize - pad;
+        double boxMinY = originY + cy * cellSize - pad;
+        double boxMaxX = boxMinX + cellSize + 2 * pad;
+        double boxMaxY = boxMinY + cellSize + 2 * pad;
+        double dx = wall.x2 - wall.x1;
+        double dy = wall.y2 - wall.y1;
+        double ta = (boxMinX - wall.x1) / dx;
+        double tb = (boxMaxX - wall.x1) / dx;
+        double tMin = Math.max(0, Math.min(ta, tb));
+        double tMax = Math.min(1, Math.max(ta, tb));
+        ta = (boxMinY - wall.y1) / dy;
+        tb = (boxMaxY - wall.y1) / dy;
+        tMin = Math.max(tMin, Math.min(ta, tb));
+        tMax = Math.min(tMax, Math.max(ta, tb));
+        return tMin <= tMax;
+    }
+
+    private static int clamp(int cell, int count) {
+        return Math.max(0, Math.min(count - 1, cell));
+    }
+}
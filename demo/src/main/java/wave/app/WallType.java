@@ -1,29 +1,28 @@
 package wave.app;
 
-import javafx.scene.paint.Color;
-
+// Energy fractions reflected, transmitted and absorbed; each row adds up to 1
 public enum WallType {
-    SOLID("Solid Wall", 0.9, 0.1, Color.WHITE),
-    WATER("Water", 0.2, 0.8, Color.CYAN),
-    GLASS("Glass", 0.3, 0.7, Color.LIGHTBLUE),
-    ABSORBER("Absorber", 0.1, 0.0, Color.DARKGRAY),
-    MIRROR("Mirror", 1.0, 0.0, Color.YELLOW),
-    CUSTOM("Custom", 0.5, 0.5, Color.MAGENTA);
+    SOLID("Solid Wall", 0.9, 0.1, 0.0, "white"),
+    WATER("Water", 0.2, 0.8, 0.0, "cyan"),
+    GLASS("Glass", 0.3, 0.7, 0.0, "lightblue"),
+    ABSORBER("Absorber", 0.1, 0.0, 0.9, "darkgray"),
+    MIRROR("Mirror", 1.0, 0.0, 0.0, "yellow"),
+    CUSTOM("Custom", 0.5, 0.5, 0.0, "magenta");
     
     private final String displayName;
-    private final double defaultReflection;
-    private final double defaultTransmission;
-    private final Color color;
+    private final Material material;
+    private final String colorName; // CSS color name, kept free of JavaFX types for the engine
     
-    WallType(String displayName, double reflection, double transmission, Color color) {
+    WallType(String displayName, double reflection, double transmission, double absorption, String colorName) {
         this.displayName = displayName;
-        this.defaultReflection = reflection;
-        this.defaultTransmission = transmission;
-        this.color = color;
+        this.material = new Material(reflection, transmission, absorption);
+        this.colorName = colorName;
     }
     
     public String getDisplayName() { return displayName; }
-    public double getDefaultReflection() { return defaultReflection; }
-    public double getDefaultTransmission() { return defaultTransmission; }
-    public Color getColor() { return color; }
+    public Material getMaterial() { return material; }
+    public double getDefaultReflection() { return material.reflection; }
+    public double getDefaultTransmission() { return material.transmission; }
+    public double getDefaultAbsorption() { return material.absorption; }
+    public String getColorName() { return colorName; }
 }
\ No newline at end of file
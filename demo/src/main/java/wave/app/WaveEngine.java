@@ -0,0 +1,1047 @@
+package wave.app;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// The wave physics, free of any JavaFX types so it can run headless. Owns the
+// sources, walls and live fronts; the UI (or a batch runner) drives it through
+// step(dt) and reads the fronts back through snapshot(). Not thread-safe: the
+// UI keeps it on the SimulationWorker thread.
+public class WaveEngine {
+    // One frame of the original 60 fps animation. Wave speed, emit rates,
+    // decay and lifetime are all expressed per reference frame.
+    public static final double REFERENCE_DT = 1.0 / 60.0;
+
+    static final int RAYS_PER_EMISSION = 72;
+    static final int MAX_AGE = 200;
+    static final double DECAY_PER_FRAME = 0.99; // At the default speed and attenuation
+    static final double MIN_AMPLITUDE = 0.05;
+    static final int MAX_REFLECTIONS = 3;
+    static final int MAX_GENERATION = 8;
+    // Nepers per pixel travelled: DECAY_PER_FRAME at the default 2 pixels per frame
+    static final double DEFAULT_ATTENUATION = -Math.log(DECAY_PER_FRAME) / 2.0;
+    // Fewest rays a source drops to while the front budget is under pressure
+    static final int MIN_RAYS_PER_EMISSION = 18;
+
+    static final double ARC_SAMPLE_SPACING = 3.0;
+    private static final double HEATMAP_CELL_SIZE = 4.0;
+
+    // Smallest range worth handing to a worker thread
+    private static final int MIN_CHUNK = 8192;
+
+    private final List<WaveSource> sources = new ArrayList<>();
+    private final List<Wall> walls = new ArrayList<>();
+    private final WallGrid wallGrid;
+    private final FrontStorage storage;
+    private final WaveFrontPool fronts;
+    private final EventSolver events;
+    private final ArcSolver arcs;
+    private final PathCache paths;
+    private boolean pathCaching = true;
+    private final SpawnCulling culling = new SpawnCulling();
+    private boolean spawnCulling = true;
+    private boolean cullingRegionStale = true; // Walls or bounds changed
+    private double[] viewRegion; // Every view shown, grown (see setViewRegion); null for none
+    private final FdtdSolver fdtd = new FdtdSolver(2.0);
+    private PhysicsMode mode = PhysicsMode.RAYS;
+    private final EngineMetrics metrics = new EngineMetrics();
+    private final FrontBudget budget = new FrontBudget();
+    private int frontBudget = 0; // Most live fronts kept; 0 for no limit
+    private Heatmap heatmap; // Null when off
+
+    // Parallel stepping; parallelism 1 keeps everything on the calling thread
+    private int parallelism = 1;
+    private ForkJoinPool pool;
+    private FrontStepper[] steppers;
+    private int activeSteppers;
+    private final RecursiveAction parallelStep = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            for (int c = 1; c < activeSteppers; c++) {
+                steppers[c].fork();
+            }
+            steppers[0].invoke();
+            for (int c = 1; c < activeSteppers; c++) {
+                steppers[c].join();
+            }
+        }
+    };
+
+    private double waveSpeed = 2.0; // Pixels per reference frame
+    private double attenuation = DEFAULT_ATTENUATION;
+
+    // Generation caps: reflections stop at maxReflections, and no front of
+    // maxGeneration, or of its wall type's own cap, spawns anything. Folded
+    // into spawn limits by wall type, which the solvers look up per collision.
+    private int maxReflections = MAX_REFLECTIONS;
+    private int maxGeneration = MAX_GENERATION;
+    private final int[] typeMaxGeneration = new int[WallType.values().length];
+    private final int[] reflectLimit = new int[WallType.values().length];
+    private final int[] transmitLimit = new int[WallType.values().length];
+    private double width = 800, height = 600; // Map area covered by the wave-equation grid
+    private long stepCount = 0;
+    private double time = 0;
+    private double lastStepDistance = 0; // For render interpolation
+    private double lastDt = REFERENCE_DT;
+
+    public WaveEngine() {
+        this(FrontStorage.DEFAULT);
+    }
+
+    // Keeps the ray fronts in the given storage, or on the heap when this JVM
+    // cannot use it (see getFrontStorage)
+    public WaveEngine(FrontStorage storage) {
+        this(new WallGrid(40), storage);
+    }
+
+    private WaveEngine(WallGrid wallGrid, FrontStorage storage) {
+        this.wallGrid = wallGrid;
+        this.storage = storage.orAvailable();
+        fronts = this.storage.newPool(1024);
+        steppers = new FrontStepper[] { new FrontStepper(this.storage) };
+        events = new EventSolver(wallGrid);
+        arcs = new ArcSolver(wallGrid);
+        paths = new PathCache(wallGrid);
+        events.reflectLimit = arcs.reflectLimit = reflectLimit;
+        events.transmitLimit = arcs.transmitLimit = transmitLimit;
+        Arrays.fill(typeMaxGeneration, Integer.MAX_VALUE);
+        updateSpawnLimits();
+    }
+
+    // A new engine over the same scene for another run of it, e.g. in a
+    // parameter sweep: copies of the sources, the given walls and this
+    // engine's settings, but no fronts. The walls must be the same segments
+    // as this engine's, in the same order, but may have other coefficients;
+    // the wall grid is shared with this engine rather than built again.
+    public WaveEngine withWalls(List<Wall> newWalls) {
+        WaveEngine copy = new WaveEngine(wallGrid.withWalls(newWalls), storage);
+        copy.walls.addAll(newWalls);
+        for (WaveSource source : sources) {
+            copy.sources.add(source.copy());
+        }
+        copy.waveSpeed = waveSpeed;
+        copy.attenuation = attenuation;
+        copy.pathCaching = pathCaching;
+        copy.spawnCulling = spawnCulling;
+        copy.viewRegion = viewRegion;
+        copy.maxReflections = maxReflections;
+        copy.maxGeneration = maxGeneration;
+        System.arraycopy(typeMaxGeneration, 0, copy.typeMaxGeneration, 0, typeMaxGeneration.length);
+        copy.updateSpawnLimits();
+        copy.width = width;
+        copy.height = height;
+        copy.frontBudget = frontBudget;
+        copy.setArcResolution(getArcResolution());
+        copy.setMode(mode);
+        return copy;
+    }
+
+    public WaveSource addSource(double x, double y) {
+        return addSource(new WaveSource(x, y));
+    }
+
+    public WaveSource addSource(WaveSource source) {
+        sources.add(source);
+        return source;
+    }
+
+    public void moveSource(WaveSource source, double x, double y) {
+        source.x = x;
+        source.y = y;
+    }
+
+    public Wall addWall(double x1, double y1, double x2, double y2, WallType type) {
+        return addWall(new Wall(x1, y1, x2, y2, type));
+    }
+
+    public Wall addWall(double x1, double y1, double x2, double y2,
+            WallType type, double reflection, double transmission) {
+        return addWall(new Wall(x1, y1, x2, y2, type, reflection, transmission));
+    }
+
+    // Adds a batch of walls, e.g. a loaded floor plan, with one grid update
+    // and one round of solver updates instead of one per wall
+    public void addWalls(List<Wall> newWalls) {
+        apply(new SceneEdit().addWalls(newWalls));
+    }
+
+    public void removeWall(Wall wall) {
+        apply(new SceneEdit().removeWall(wall));
+    }
+
+    public void removeSource(WaveSource source) {
+        apply(new SceneEdit().removeSource(source));
+    }
+
+    // Makes a batch of scene changes at once. Removed walls come out of the
+    // grid cells they were in and added ones go into theirs, with a rebuild
+    // only when they reach past the grid; then the event queue is rescheduled,
+    // the arcs restarted and the FDTD walls rasterised once for the lot.
+    // Fronts already emitted by a removed source live on.
+    public void apply(SceneEdit edit) {
+        boolean wallsChanged = false;
+        if (!edit.removedWalls.isEmpty()) {
+            Set<Wall> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            removed.addAll(edit.removedWalls);
+            walls.removeIf(removed::contains);
+            wallGrid.removeAll(removed);
+            paths.wallsRemoved(removed);
+            wallsChanged = true;
+        }
+        for (WaveSource source : edit.removedSources) {
+            sources.remove(source);
+            paths.sourceRemoved(source);
+        }
+        if (!edit.addedWalls.isEmpty()) {
+            walls.addAll(edit.addedWalls);
+            wallGrid.addAll(edit.addedWalls);
+            paths.wallsAdded(edit.addedWalls);
+            wallsChanged = true;
+        }
+        sources.addAll(edit.addedSources);
+        for (SceneEdit.Move move : edit.moves) {
+            moveSource(move.source, move.toX, move.toY);
+        }
+        if (!wallsChanged) {
+            return;
+        }
+        cullingRegionStale = true;
+        paths.release(fronts);
+        if (events.size() > 0) {
+            events.reschedule(time);
+        }
+        arcs.clear();
+        if (mode == PhysicsMode.FDTD) {
+            fdtd.setWalls(walls);
+        }
+    }
+
+    public Wall addWall(Wall wall) {
+        walls.add(wall);
+        wallGrid.add(wall);
+        cullingRegionStale = true;
+        paths.wallsAdded(List.of(wall));
+        paths.release(fronts);
+        if (events.size() > 0) {
+            // The new wall may cut rays whose next event is already known
+            events.reschedule(time);
+        }
+        // Arcs were split against the old walls; start them over
+        arcs.clear();
+        if (mode == PhysicsMode.FDTD) {
+            fdtd.addWall(wall);
+        }
+        return wall;
+    }
+
+    public void clearFronts() {
+        fronts.clear();
+        events.clear();
+        arcs.clear();
+        fdtd.clearField();
+    }
+
+    // Removes everything: fronts, sources, walls and the heatmap
+    public void clear() {
+        clearHeatmap();
+        fronts.clear();
+        events.clear();
+        arcs.clear();
+        sources.clear();
+        walls.clear();
+        wallGrid.clear();
+        cullingRegionStale = true;
+        paths.clear();
+        paths.release(fronts);
+        if (mode == PhysicsMode.FDTD) {
+            fdtd.rebuild(width, height, walls);
+        }
+    }
+
+    public FrontStorage getFrontStorage() {
+        return storage;
+    }
+
+    // Hands the front storage back now rather than when the engine is
+    // collected, which matters off the heap where the GC does not see its
+    // size; the engine cannot be stepped afterwards
+    public void freeFronts() {
+        fronts.free();
+        for (FrontStepper stepper : steppers) {
+            stepper.spawned.free();
+        }
+    }
+
+    public List<WaveSource> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    public List<Wall> getWalls() {
+        return Collections.unmodifiableList(walls);
+    }
+
+    // Squared amplitude summed over the fronts inside the rectangle, or the
+    // squared field over its cells in FDTD mode. An arc counts as the
+    // RAYS_PER_EMISSION fronts of a full circle would along the same stretch.
+    public double energyIn(double minX, double minY, double maxX, double maxY) {
+        double sum = 0;
+        switch (mode) {
+            case RAYS -> {
+                for (int i = 0; i < fronts.size(); i++) {
+                    double x = fronts.x(i), y = fronts.y(i);
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                        double a = fronts.amplitude(i);
+                        sum += a * a;
+                    }
+                }
+            }
+            case EVENTS -> {
+                for (int h = 0; h < events.size(); h++) {
+                    int s = events.heap[h];
+                    double x = events.x(s, time), y = events.y(s, time);
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                        double a = events.drawAmplitude(s, time);
+                        sum += a * a;
+                    }
+                }
+            }
+            case ARCS -> sum = arcs.energyIn(time, minX, minY, maxX, maxY, RAYS_PER_EMISSION / (2 * Math.PI));
+            case FDTD -> sum = fdtd.energyIn(minX, minY, maxX, maxY);
+        }
+        return sum;
+    }
+
+    // Live elements: point fronts, or arcs in arc mode
+    public int frontCount() {
+        return switch (mode) {
+            case EVENTS -> events.size();
+            case ARCS -> arcs.size();
+            case FDTD -> 0;
+            default -> fronts.size();
+        };
+    }
+
+    public int getFrontBudget() {
+        return frontBudget;
+    }
+
+    // Caps the live fronts in the ray and event modes. Over the cap, similar
+    // fronts are merged and the weakest culled, and sources emit fewer rays
+    // until the count drops back. 0 turns the cap off.
+    public void setFrontBudget(int frontBudget) {
+        this.frontBudget = Math.max(0, frontBudget);
+        if (this.frontBudget == 0) {
+            for (WaveSource source : sources) {
+                source.rays = RAYS_PER_EMISSION;
+            }
+        }
+    }
+
+    public HeatmapMode getHeatmapMode() {
+        return heatmap == null ? HeatmapMode.OFF : heatmap.getMode();
+    }
+
+    // Starts collecting a heatmap of what passes each cell, or stops with OFF.
+    // Switching to another kind starts a new map.
+    public void setHeatmapMode(HeatmapMode mode) {
+        if (mode == getHeatmapMode()) {
+            return;
+        }
+        heatmap = mode == HeatmapMode.OFF ? null : new Heatmap(HEATMAP_CELL_SIZE, mode, width, height);
+    }
+
+    public void clearHeatmap() {
+        if (heatmap != null) {
+            heatmap.clear();
+        }
+    }
+
+    // Writes the heatmap collected so far as CSV
+    public void exportHeatmap(Path path) throws IOException {
+        if (heatmap == null) {
+            throw new IOException("no heatmap is being collected");
+        }
+        heatmap.write(path);
+    }
+
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public PhysicsMode getMode() {
+        return mode;
+    }
+
+    // Switches the physics mode, carrying the live fronts over
+    public void setMode(PhysicsMode mode) {
+        if (mode == this.mode) {
+            return;
+        }
+        if (mode == PhysicsMode.FDTD) {
+            clearFronts();
+            fdtd.rebuild(width, height, walls);
+        } else if (this.mode == PhysicsMode.FDTD || mode == PhysicsMode.ARCS || this.mode == PhysicsMode.ARCS) {
+            // Fields, arcs and point fronts don't convert into each other
+            clearFronts();
+        } else if (mode == PhysicsMode.EVENTS) {
+            // Wind each front's decay back to its birth so the lifetime carries on
+            events.setSpeed(waveSpeed / REFERENCE_DT, time);
+            events.setDecay(decayPerFrame(), time);
+            for (int i = 0; i < fronts.size(); i++) {
+                double angle = fronts.angle(i);
+                double lived = fronts.age(i) * lastDt;
+                double amplitude0 = fronts.amplitude(i) / Math.pow(decayPerFrame(), lived / REFERENCE_DT);
+                events.add(fronts.x(i), fronts.y(i), Math.cos(angle), Math.sin(angle),
+                        amplitude0, fronts.generation(i), fronts.phase(i), time - lived, time, null);
+            }
+            fronts.clear();
+        } else {
+            for (int h = 0; h < events.heapSize; h++) {
+                int s = events.heap[h];
+                int f = fronts.add(events.x(s, time), events.y(s, time),
+                        Math.atan2(events.dirY[s], events.dirX[s]),
+                        events.amplitude(s, time), events.generation[s], events.phase[s]);
+                fronts.setAge(f, events.age(s, time, lastDt));
+            }
+            events.clear();
+        }
+        this.mode = mode;
+    }
+
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public double getWaveSpeed() {
+        return waveSpeed;
+    }
+
+    public void setWaveSpeed(double waveSpeed) {
+        if (mode == PhysicsMode.ARCS && waveSpeed != this.waveSpeed) {
+            // Arc radii are derived from their birth times at the old speed
+            arcs.clear();
+        }
+        this.waveSpeed = waveSpeed;
+    }
+
+    public int getMaxReflections() {
+        return maxReflections;
+    }
+
+    // Highest generation that still spawns a reflection off a wall
+    public void setMaxReflections(int maxReflections) {
+        this.maxReflections = Math.max(0, maxReflections);
+        updateSpawnLimits();
+    }
+
+    public int getMaxGeneration() {
+        return maxGeneration;
+    }
+
+    // Fronts of this generation no longer spawn anything at a wall
+    public void setMaxGeneration(int maxGeneration) {
+        this.maxGeneration = Math.max(0, maxGeneration);
+        updateSpawnLimits();
+    }
+
+    public int getMaxGeneration(WallType type) {
+        return typeMaxGeneration[type.ordinal()];
+    }
+
+    // As above, for walls of one type only, on top of the global caps
+    public void setMaxGeneration(WallType type, int maxGeneration) {
+        typeMaxGeneration[type.ordinal()] = Math.max(0, maxGeneration);
+        updateSpawnLimits();
+    }
+
+    private void updateSpawnLimits() {
+        for (int t = 0; t < typeMaxGeneration.length; t++) {
+            transmitLimit[t] = Math.min(maxGeneration, typeMaxGeneration[t]);
+            reflectLimit[t] = Math.min(transmitLimit[t], maxReflections);
+        }
+        // Traced paths stop spawning where the old limits did
+        paths.clear();
+        paths.release(fronts);
+    }
+
+    public boolean isPathCaching() {
+        return pathCaching;
+    }
+
+    // Whether the ray mode follows traced paths (see PathCache) instead of
+    // querying the wall grid for every front every step. Results are the
+    // same either way.
+    public void setPathCaching(boolean pathCaching) {
+        this.pathCaching = pathCaching;
+        if (!pathCaching) {
+            paths.clear();
+            paths.release(fronts);
+        }
+    }
+
+    public boolean isSpawnCulling() {
+        return spawnCulling;
+    }
+
+    // Whether collisions skip fronts that could never show (see SpawnCulling):
+    // ones the wall and a step of decay leave under MIN_AMPLITUDE, and ones
+    // that start outside the map, its walls and the view and never come back in. Only
+    // those fronts differ, but that is enough to change the state hash.
+    public void setSpawnCulling(boolean spawnCulling) {
+        if (spawnCulling == this.spawnCulling) {
+            return;
+        }
+        this.spawnCulling = spawnCulling;
+        // Traced trees left out the children culling would have dropped
+        paths.clear();
+        paths.release(fronts);
+    }
+
+    // Path nodes currently traced, for reporting
+    public int pathCacheSize() {
+        return paths.size();
+    }
+
+    public double getAttenuation() {
+        return attenuation;
+    }
+
+    // Amplitude lost with distance travelled, in nepers per pixel: a front
+    // keeps exp(-attenuation * distance) of its amplitude
+    public void setAttenuation(double attenuation) {
+        this.attenuation = Math.max(0, attenuation);
+    }
+
+    // Amplitude kept per reference frame at the current speed
+    private double decayPerFrame() {
+        return Math.exp(-attenuation * waveSpeed);
+    }
+
+    // Angular resolution used to split arcs at walls in arc mode
+    public double getArcResolution() {
+        return arcs.getResolution();
+    }
+
+    public void setArcResolution(double radians) {
+        arcs.setResolution(radians);
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    // Size of the map; the wave-equation grid covers exactly this area
+    public void setBounds(double width, double height) {
+        if (width == this.width && height == this.height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        cullingRegionStale = true;
+        if (heatmap != null) {
+            heatmap.resize(width, height);
+        }
+        if (mode == PhysicsMode.FDTD) {
+            fdtd.rebuild(width, height, walls);
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Number of threads step() may use. Results are bit-identical whatever the
+    // setting, since spawned fronts are merged back in a fixed order.
+    public void setParallelism(int parallelism) {
+        parallelism = Math.max(1, parallelism);
+        if (parallelism == this.parallelism) {
+            return;
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.parallelism = parallelism;
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+        }
+    }
+
+    // Advances the simulation by dt seconds. dt == REFERENCE_DT reproduces one
+    // frame of the original animation. Ages are counted in steps, so dt should
+    // stay the same for the whole run.
+    public void step(double dt) {
+        double frames = dt / REFERENCE_DT;
+        metrics.beginStep(frontCount());
+
+        if (mode == PhysicsMode.FDTD) {
+            // Fixed cost per cell, row bands in parallel when a pool is set
+            fdtd.step(dt, waveSpeed / REFERENCE_DT, sources, time, pool);
+            metrics.endPhase(EngineMetrics.MOVE);
+            finishStep(dt, 0);
+            return;
+        }
+
+        if (mode == PhysicsMode.EVENTS || mode == PhysicsMode.ARCS) {
+            // Only fronts whose wall hit or death falls inside this step are touched
+            if (mode == PhysicsMode.EVENTS) {
+                events.setSpeed(waveSpeed / REFERENCE_DT, time);
+                events.setDecay(decayPerFrame(), time);
+                events.culling = prepareCulling(decayPerFrame(), waveSpeed, MAX_AGE);
+                metrics.emitted(emit(frames));
+                metrics.endPhase(EngineMetrics.EMIT);
+                events.advanceTo(time + dt);
+                metrics.collisions(events.collisionsByType);
+                metrics.spawned(events.spawnedCount);
+                metrics.pruned(events.prunedFaint, events.prunedOutside);
+                Arrays.fill(events.collisionsByType, 0);
+                events.spawnedCount = 0;
+                events.prunedFaint = events.prunedOutside = 0;
+            } else {
+                arcs.setSpeed(waveSpeed / REFERENCE_DT);
+                arcs.setDecay(decayPerFrame());
+                metrics.emitted(emit(frames));
+                metrics.endPhase(EngineMetrics.EMIT);
+                arcs.advanceTo(time + dt);
+                metrics.collisions(arcs.collisionsByType);
+                metrics.spawned(arcs.spawnedCount);
+                Arrays.fill(arcs.collisionsByType, 0);
+                arcs.spawnedCount = 0;
+            }
+            metrics.endPhase(EngineMetrics.MOVE);
+            if (mode == PhysicsMode.EVENTS) {
+                // Positions are only known lazily here, so fronts are culled, not merged
+                metrics.budget(0, budget.cull(events, frontBudget, time + dt));
+                metrics.endPhase(EngineMetrics.BUDGET);
+            }
+            finishStep(dt, waveSpeed * frames);
+            return;
+        }
+
+        double distance = waveSpeed * frames;
+        double decay = Math.exp(-attenuation * waveSpeed * frames);
+        double ageLimit = MAX_AGE / frames;
+        SpawnCulling culling = prepareCulling(decay, distance, ageLimit);
+        if (pathCaching) {
+            paths.prepare(distance, decay, ageLimit, reflectLimit, transmitLimit, culling);
+            paths.release(fronts);
+        }
+        metrics.emitted(emit(frames));
+        metrics.endPhase(EngineMetrics.EMIT);
+
+        // Split the pool into ranges, one per stepper. Serial mode is simply a
+        // single range covering everything.
+        int count = fronts.size();
+        int chunks = 1;
+        if (pool != null) {
+            chunks = Math.max(1, Math.min(parallelism * 4, count / MIN_CHUNK));
+        }
+        if (steppers.length < chunks) {
+            int old = steppers.length;
+            steppers = Arrays.copyOf(steppers, chunks);
+            for (int c = old; c < chunks; c++) {
+                steppers[c] = new FrontStepper(storage);
+            }
+        }
+        for (int c = 0; c < chunks; c++) {
+            FrontStepper stepper = steppers[c];
+            stepper.reinitialize();
+            stepper.fronts = fronts;
+            stepper.wallGrid = wallGrid;
+            stepper.distance = distance;
+            stepper.decay = decay;
+            stepper.ageLimit = ageLimit;
+            stepper.reflectLimit = reflectLimit;
+            stepper.transmitLimit = transmitLimit;
+            stepper.paths = paths;
+            stepper.culling = culling;
+            stepper.from = (int) ((long) count * c / chunks);
+            stepper.to = (int) ((long) count * (c + 1) / chunks);
+        }
+
+        if (chunks == 1) {
+            steppers[0].advance();
+        } else {
+            activeSteppers = chunks;
+            parallelStep.reinitialize();
+            pool.invoke(parallelStep);
+        }
+        metrics.endPhase(EngineMetrics.MOVE);
+
+        // Merge in range order: close the gaps between the compacted ranges,
+        // then append each stepper's spawned fronts
+        int live = 0;
+        for (int c = 0; c < chunks; c++) {
+            FrontStepper stepper = steppers[c];
+            fronts.moveRange(stepper.from, live, stepper.live);
+            live += stepper.live;
+        }
+        fronts.truncate(live);
+        for (int c = 0; c < chunks; c++) {
+            FrontStepper stepper = steppers[c];
+            metrics.spawned(stepper.spawned.size());
+            metrics.collisions(stepper.collisionsByType);
+            metrics.pruned(stepper.prunedFaint, stepper.prunedOutside);
+            Arrays.fill(stepper.collisionsByType, 0);
+            stepper.prunedFaint = stepper.prunedOutside = 0;
+            fronts.addAll(stepper.spawned);
+            stepper.spawned.clear();
+        }
+        metrics.endPhase(EngineMetrics.MERGE);
+        budget.enforce(fronts, frontBudget);
+        metrics.budget(budget.lastMerged, budget.lastCulled);
+        metrics.endPhase(EngineMetrics.BUDGET);
+        finishStep(dt, distance);
+    }
+
+    // The part of the world on screen. Outside-culling keeps the fronts that
+    // pass through any view shown so far as well, so a view panned or zoomed
+    // out past the map still shows them. The region grows to take in a view
+    // that leaves it, by half a view more on each side so a steady pan or
+    // zoom only grows it now and then: traced paths left those fronts out,
+    // so they are dropped each time the culling region grows.
+    public void setViewRegion(double minX, double minY, double maxX, double maxY) {
+        if (viewRegion != null && minX >= viewRegion[0] && minY >= viewRegion[1]
+                && maxX <= viewRegion[2] && maxY <= viewRegion[3]) {
+            return;
+        }
+        double marginX = (maxX - minX) / 2, marginY = (maxY - minY) / 2;
+        minX -= marginX;
+        minY -= marginY;
+        maxX += marginX;
+        maxY += marginY;
+        if (viewRegion != null) {
+            minX = Math.min(minX, viewRegion[0]);
+            minY = Math.min(minY, viewRegion[1]);
+            maxX = Math.max(maxX, viewRegion[2]);
+            maxY = Math.max(maxY, viewRegion[3]);
+        }
+        viewRegion = new double[] { minX, minY, maxX, maxY };
+        if (minX < culling.minX || minY < culling.minY || maxX > culling.maxX || maxY > culling.maxY) {
+            cullingRegionStale = true;
+            if (spawnCulling) {
+                paths.clear();
+                paths.release(fronts);
+            }
+        }
+    }
+
+    // Sets the culling up for steps of the given decay and distance, or
+    // returns null when it is off
+    private SpawnCulling prepareCulling(double decay, double distance, double stepLimit) {
+        if (!spawnCulling) {
+            return null;
+        }
+        culling.decay = decay;
+        culling.distance = distance;
+        culling.stepLimit = stepLimit;
+        if (cullingRegionStale) {
+            // The map, grown to take in any walls past its edges and the views
+            double minX = 0, minY = 0, maxX = width, maxY = height;
+            if (viewRegion != null) {
+                minX = Math.min(minX, viewRegion[0]);
+                minY = Math.min(minY, viewRegion[1]);
+                maxX = Math.max(maxX, viewRegion[2]);
+                maxY = Math.max(maxY, viewRegion[3]);
+            }
+            for (Wall wall : walls) {
+                minX = Math.min(minX, Math.min(wall.x1, wall.x2));
+                minY = Math.min(minY, Math.min(wall.y1, wall.y2));
+                maxX = Math.max(maxX, Math.max(wall.x1, wall.x2));
+                maxY = Math.max(maxY, Math.max(wall.y1, wall.y2));
+            }
+            culling.minX = minX;
+            culling.minY = minY;
+            culling.maxX = maxX;
+            culling.maxY = maxY;
+            cullingRegionStale = false;
+        }
+        return culling;
+    }
+
+    private void finishStep(double dt, double distance) {
+        lastStepDistance = distance;
+        lastDt = dt;
+        stepCount++;
+        time += dt;
+        if (heatmap != null) {
+            switch (mode) {
+                case RAYS -> heatmap.deposit(fronts, distance);
+                case EVENTS -> heatmap.deposit(events, time, distance);
+                case FDTD -> heatmap.deposit(fdtd, dt / REFERENCE_DT);
+                default -> {
+                    // Arcs carry no per-point phase or weight to deposit
+                }
+            }
+            metrics.endPhase(EngineMetrics.HEATMAP);
+        }
+        if (metrics.wantsGenerations(stepCount)) {
+            countGenerations(metrics.liveByGeneration);
+        }
+        metrics.endStep(frontCount());
+    }
+
+    // Live fronts (or arcs) per generation, the last bucket taking the rest
+    private void countGenerations(int[] into) {
+        Arrays.fill(into, 0);
+        int last = into.length - 1;
+        switch (mode) {
+            case EVENTS -> {
+                for (int h = 0; h < events.size(); h++) {
+                    into[Math.min(last, events.generation[events.heap[h]])]++;
+                }
+            }
+            case ARCS -> {
+                for (int i = 0; i < arcs.size(); i++) {
+                    into[Math.min(last, arcs.generation[i])]++;
+                }
+            }
+            case RAYS -> {
+                for (int i = 0; i < fronts.size(); i++) {
+                    into[Math.min(last, fronts.generation(i))]++;
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    // Create new wave fronts from sources; returns how many
+    private int emit(double frames) {
+        int emitted = 0;
+        int live = frontCount();
+        for (WaveSource source : sources) {
+            source.emitClock += frames;
+            while (source.emitClock >= source.emitRate) {
+                source.emitClock -= source.emitRate;
+
+                if (mode == PhysicsMode.ARCS) {
+                    int before = arcs.size();
+                    arcs.emit(source.x, source.y, time);
+                    emitted += arcs.size() - before;
+                    continue;
+                }
+                int rays = adaptRays(source, live);
+                double phase = source.phaseAt(time);
+                int[] roots = pathCaching && mode == PhysicsMode.RAYS ? paths.roots(source, rays) : null;
+                emitted += rays;
+                live += rays;
+
+                // Emit waves in multiple directions for more realistic effect
+                for (int i = 0; i < rays; i++) {
+                    double angle = i * (2 * Math.PI / rays);
+                    if (mode == PhysicsMode.EVENTS) {
+                        events.add(source.x, source.y, Math.cos(angle), Math.sin(angle),
+                                1.0, 0, phase, time, time, null);
+                    } else {
+                        int f = fronts.add(source.x, source.y, angle, 1.0, 0, phase);
+                        if (roots != null && roots[i] != PathCache.UNCACHED) {
+                            fronts.setPath(f, roots[i]);
+                            fronts.setHitIn(f, paths.steps[roots[i]]);
+                        }
+                    }
+                }
+            }
+        }
+        return emitted;
+    }
+
+    // Halves a source's rays per emission while the fronts are close to the
+    // budget and doubles them back once there is room again
+    private int adaptRays(WaveSource source, int live) {
+        if (frontBudget > 0) {
+            if (live > frontBudget * 0.9) {
+                source.rays = Math.max(MIN_RAYS_PER_EMISSION, source.rays / 2);
+            } else if (live < frontBudget / 2) {
+                source.rays = Math.min(RAYS_PER_EMISSION, source.rays * 2);
+            }
+        }
+        return source.rays;
+    }
+
+    // Hash over the exact bits of every live front, for comparing runs
+    public long stateHash() {
+        if (mode == PhysicsMode.FDTD) {
+            return fdtd.fieldHash();
+        }
+        if (mode == PhysicsMode.ARCS) {
+            long hash = arcs.size();
+            for (int i = 0; i < arcs.size(); i++) {
+                hash = hash * 31 + Double.doubleToLongBits(arcs.originX[i]);
+                hash = hash * 31 + Double.doubleToLongBits(arcs.originY[i]);
+                hash = hash * 31 + Double.doubleToLongBits(arcs.angle0[i]);
+                hash = hash * 31 + Double.doubleToLongBits(arcs.angle1[i]);
+                hash = hash * 31 + Double.doubleToLongBits(arcs.amplitude0[i]);
+                hash = hash * 31 + arcs.generation[i];
+            }
+            return hash;
+        }
+        if (mode == PhysicsMode.EVENTS) {
+            long hash = events.size();
+            for (int h = 0; h < events.heapSize; h++) {
+                int s = events.heap[h];
+                hash = hash * 31 + Double.doubleToLongBits(events.x(s, time));
+                hash = hash * 31 + Double.doubleToLongBits(events.y(s, time));
+                hash = hash * 31 + Double.doubleToLongBits(events.amplitude(s, time));
+                hash = hash * 31 + events.generation[s];
+            }
+            return hash;
+        }
+        long hash = fronts.size();
+        for (int i = 0; i < fronts.size(); i++) {
+            hash = hash * 31 + Double.doubleToLongBits(fronts.x(i));
+            hash = hash * 31 + Double.doubleToLongBits(fronts.y(i));
+            hash = hash * 31 + Double.doubleToLongBits(fronts.angle(i));
+            hash = hash * 31 + Double.doubleToLongBits(fronts.amplitude(i));
+            hash = hash * 31 + fronts.age(i);
+            hash = hash * 31 + fronts.generation(i);
+        }
+        return hash;
+    }
+
+    // For recording in event mode: returns the changes to the event fronts
+    // since the last call and logs further ones into empty (cleared first).
+    // The first call, and the first after stopLogs, returns every live
+    // front.
+    EventLog swapEventLog(EventLog empty) {
+        return events.swapLog(empty != null ? empty : new EventLog(), stepCount, time);
+    }
+
+    // As above for the arcs in arc mode
+    ArcLog swapArcLog(ArcLog empty) {
+        return arcs.swapLog(empty != null ? empty : new ArcLog(), stepCount, time);
+    }
+
+    // Stops the logs, once they are no longer handed over
+    void stopLogs() {
+        events.stopLog();
+        arcs.stopLog();
+    }
+
+    // For recording in the other modes: as snapshot(into), less the heatmap,
+    // which is not recorded
+    FrontSnapshot copyState(FrontSnapshot into) {
+        into.heatCols = 0;
+        into.fieldCols = 0;
+        if (mode == PhysicsMode.FDTD) {
+            fdtd.copyField(into);
+            into.count = 0;
+        } else {
+            fronts.copyTo(into);
+        }
+        into.stepCount = stepCount;
+        into.time = time;
+        return into;
+    }
+
+    // Copies the live fronts into the given snapshot (or a new one when null)
+    // and returns it, so callers can keep reading it while the engine steps on.
+    public FrontSnapshot snapshot(FrontSnapshot into) {
+        return snapshot(into, 1);
+    }
+
+    // As above, but with positions interpolated between the previous and the
+    // current step: alpha 0 is the previous state, 1 the current one. Fronts
+    // move in straight lines, so this is just a step back along each ray.
+    public FrontSnapshot snapshot(FrontSnapshot into, double alpha) {
+        double inf = Double.POSITIVE_INFINITY;
+        return snapshot(into, alpha, -inf, -inf, inf, inf);
+    }
+
+    // As above, but only the point fronts inside the given world rectangle,
+    // so a zoomed-in view doesn't pay to copy the whole world
+    public FrontSnapshot snapshot(FrontSnapshot into, double alpha,
+            double minX, double minY, double maxX, double maxY) {
+        FrontSnapshot snapshot = into != null ? into : new FrontSnapshot();
+        snapshot.fieldCols = 0;
+        snapshot.heatCols = 0;
+        if (heatmap != null) {
+            heatmap.copyTo(snapshot);
+        }
+        if (mode == PhysicsMode.FDTD) {
+            fdtd.copyField(snapshot);
+            snapshot.count = 0;
+            snapshot.stepCount = stepCount;
+            snapshot.time = time;
+            return snapshot;
+        }
+        if (mode == PhysicsMode.ARCS) {
+            // Points along each arc, about as far apart as the ring markers
+            snapshot.count = arcs.sample(time - (1 - alpha) * lastDt, ARC_SAMPLE_SPACING, snapshot);
+            snapshot.stepCount = stepCount;
+            snapshot.time = time;
+            return snapshot;
+        }
+        if (mode == PhysicsMode.EVENTS) {
+            // Positions are only known implicitly, so evaluate them at render time
+            double renderTime = time - (1 - alpha) * lastDt;
+            snapshot.ensureCapacity(events.size());
+            int count = 0;
+            // Slot order rather than heap order: sequential memory access, and
+            // neighbouring slots tend to be neighbouring fronts
+            for (int s = 0, slots = events.slotCount(); s < slots; s++) {
+                if (events.live[s]) {
+                    double x = events.x(s, renderTime), y = events.y(s, renderTime);
+                    if (x < minX || y < minY || x > maxX || y > maxY) {
+                        continue;
+                    }
+                    snapshot.x[count] = (float) x;
+                    snapshot.y[count] = (float) y;
+                    snapshot.amplitude[count] = events.drawAmplitude(s, renderTime);
+                    snapshot.generation[count] = events.generation[s];
+                    count++;
+                }
+            }
+            snapshot.count = count;
+            snapshot.stepCount = stepCount;
+            snapshot.time = time;
+            return snapshot;
+        }
+        // Grown as fronts turn out to be visible rather than sized for all of
+        // them, so a huge off-heap population does not come back as heap here
+        int count = fronts.size();
+        double back = (1 - alpha) * lastStepDistance;
+        // A front is at most back away from where it is drawn
+        double left = minX - back, top = minY - back, right = maxX + back, bottom = maxY + back;
+        int copied = 0;
+        for (int i = 0; i < count; i++) {
+            double x = fronts.x(i);
+            double y = fronts.y(i);
+            if (x < left || y < top || x > right || y > bottom) {
+                continue;
+            }
+            if (back != 0) {
+                x -= Math.cos(fronts.angle(i)) * back;
+                y -= Math.sin(fronts.angle(i)) * back;
+            }
+            if (copied == snapshot.x.length) {
+                snapshot.ensureCapacity(copied + 1);
+            }
+            snapshot.x[copied] = (float) x;
+            snapshot.y[copied] = (float) y;
+            snapshot.amplitude[copied] = (float) fronts.amplitude(i);
+            snapshot.generation[copied] = fronts.generation(i);
+            copied++;
+        }
+        snapshot.count = copied;
+        snapshot.stepCount = stepCount;
+        snapshot.time = time;
+        return snapshot;
+    }
+}
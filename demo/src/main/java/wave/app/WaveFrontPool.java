@@ -0,0 +1,113 @@
+package wave.app;
+
+// Structure-of-arrays store for the live wave fronts. A front is just an index
+// into parallel columns of its fields, so once the columns have grown to the
+// steady-state population a simulation step allocates nothing.
+//
+// Where the columns live depends on the FrontStorage the engine was created
+// with: HeapFrontPool keeps them in Java arrays, OffHeapFrontPool in native
+// memory. Every pool of one engine is of the same kind, so the accessors
+// below stay monomorphic and the JIT inlines them into the stepping loops.
+public abstract class WaveFrontPool {
+    int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public abstract int capacity();
+
+    abstract double x(int i);
+    abstract double y(int i);
+    abstract double angle(int i);
+    abstract double amplitude(int i);
+    abstract int age(int i);
+    abstract int generation(int i);     // Number of reflections/transmissions so far
+    abstract double phase(int i);       // Signal phase the front carries from its source, radians
+    abstract int path(int i);           // PathCache node the front follows, or PathCache.UNCACHED
+    abstract int hitIn(int i);          // Steps left on that node
+
+    abstract void setX(int i, double x);
+    abstract void setY(int i, double y);
+    abstract void setAngle(int i, double angle);
+    abstract void setAmplitude(int i, double amplitude);
+    abstract void setAge(int i, int age);
+    abstract void setGeneration(int i, int generation);
+    abstract void setPhase(int i, double phase);
+    abstract void setPath(int i, int path);
+    abstract void setHitIn(int i, int hitIn);
+
+    // Appends a new front and returns its index
+    int add(double x, double y, double angle, double amplitude, int generation, double phase) {
+        if (size == capacity()) {
+            grow(size + 1);
+        }
+        int i = size++;
+        setX(i, x);
+        setY(i, y);
+        setAngle(i, angle);
+        setAmplitude(i, amplitude);
+        setAge(i, 0);
+        setGeneration(i, generation);
+        setPhase(i, phase);
+        setPath(i, PathCache.UNCACHED);
+        return i;
+    }
+
+    // Copies the front at index from over the one at index to
+    void move(int from, int to) {
+        setX(to, x(from));
+        setY(to, y(from));
+        setAngle(to, angle(from));
+        setAmplitude(to, amplitude(from));
+        setAge(to, age(from));
+        setGeneration(to, generation(from));
+        setPhase(to, phase(from));
+        setPath(to, path(from));
+        setHitIn(to, hitIn(from));
+    }
+
+    // Copies what is drawn of every front into the snapshot, in order
+    void copyTo(FrontSnapshot into) {
+        into.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            into.x[i] = (float) x(i);
+            into.y[i] = (float) y(i);
+            into.amplitude[i] = (float) amplitude(i);
+            into.generation[i] = generation(i);
+        }
+        into.count = size;
+    }
+
+    // Slides count fronts starting at from down to to (to <= from)
+    abstract void moveRange(int from, int to, int count);
+
+    // Appends all fronts of the other pool, which is of the same kind, in order
+    abstract void addAll(WaveFrontPool other);
+
+    void truncate(int size) {
+        this.size = size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > capacity()) {
+            grow(capacity);
+        }
+    }
+
+    // Hands back the memory now instead of when the pool is collected; the
+    // pool is unusable afterwards
+    void free() {
+    }
+
+    // Grows by half, or to the given capacity if that is more
+    abstract void grow(int minCapacity);
+
+    int grownCapacity(int minCapacity) {
+        return Math.max(minCapacity, capacity() + (capacity() >> 1));
+    }
+}
@@ -2,8 +2,12 @@ package wave.app;
 
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
@@ -11,26 +15,70 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.shape.Circle;
-import javafx.scene.shape.Line;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Affine;
 import javafx.animation.AnimationTimer;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 public class WaveSimulation extends Application {
+    // Loaded floor plans can have tens of thousands of walls; past this many
+    // the per-wall type labels are left out
+    private static final int MAX_LABELLED_WALLS = 500;
+    // Live fronts kept before merging and culling start, so a crowded scene
+    // slows down gracefully instead of stalling the frame
+    private static final int DEFAULT_FRONT_BUDGET = 100_000;
 
     private Pane mapPane;
-    private List<WaveSource> sources = new ArrayList<>();
-    private ConcurrentLinkedQueue<WaveFront> waveFronts = new ConcurrentLinkedQueue<>();
-    private List<WaveFront> wavesToRemove = new ArrayList<>();
-    private List<Wall> walls = new ArrayList<>();
-
-    // Wave parameters
-    private double waveSpeed = 2.0;
-    private double reflectionCoeff = 0.7; // 70% reflects
-    private double transmissionCoeff = 0.3; // 30% passes through
+    private final WaveEngine engine = new WaveEngine();
+    private final FrontRenderer frontRenderer = new FrontRenderer();
+    private final SimulationClock clock = new SimulationClock(WaveEngine.REFERENCE_DT);
+    // Owns the engine and clock once started; everything else goes through it
+    private final SimulationWorker worker = new SimulationWorker(engine, clock);
+    private FrontSnapshot snapshot; // Latest from the worker, ours until the next one
+    private FrontSnapshot replaySnapshot; // Frame shownFrame of the replay
+    private FrontSnapshot replayAhead;    // The frame after it, when aheadDecoded
+    // What the engine's scene holds, as the FX thread knows it: every wall
+    // with its label (null past MAX_LABELLED_WALLS) and every source with its
+    // dot. Edits change these here and the engine on the worker in one go.
+    private final Map<Wall, Label> wallNodes = new LinkedHashMap<>();
+    private final Map<WaveSource, Circle> sourceDots = new LinkedHashMap<>();
+    // Dots not in the scene: those of sources an edit is about to add, and
+    // those of removed sources for an undo to bring back. They go once the
+    // history no longer holds the source.
+    private final Map<WaveSource, Circle> detachedDots = new WeakHashMap<>();
+    private final EditHistory history = new EditHistory();
+    private Button undoBtn, redoBtn;
+
+    // Pan and zoom: labels and source dots live in world coordinates in a
+    // group transformed by the viewport; fronts and walls are drawn by the
+    // renderer, which culls them to it
+    private static final double ZOOM_STEP = 1.1;
+    private static final double SOURCE_RADIUS = 8; // Screen pixels
+    private final Group world = new Group();
+    private final Affine worldTransform = new Affine();
+    private Viewport viewport = Viewport.identity(800, 600);
+    private boolean viewportChanged = true;
+    private double panX, panY;
 
     // Wall drawing mode
     private boolean wallDrawingMode = false;
@@ -43,12 +91,62 @@ public class WaveSimulation extends Application {
     private Slider customTransmissionSlider;
     private Label customValuesLabel;
 
+    // Signal of newly placed sources; 0 Hz is one cycle per emission
+    private Slider sourceFrequencySlider;
+    private Slider sourcePhaseSlider;
+
+    // Recording the live run, or replaying a recording instead of simulating
+    private Recorder recorder; // Worker thread only
+    private boolean recording;
+    private Recording replay;
+    private int replayFrame; // Slider position
+    private int shownFrame = -1;
+    private boolean aheadDecoded;
+    // Replay clock: recorded time replayAnchorTime was shown at pulse replayAnchorNanos
+    private double replayAnchorTime;
+    private long replayAnchorNanos;
+    private Slider replaySlider;
+    private Button recordBtn;
+
+    // Performance overlay, refreshed a few times a second
+    private static final long METRICS_REFRESH_NANOS = 250_000_000L;
+    private Label metricsLabel;
+    private long lastMetricsRefresh;
+
+    // With --exit-after-frames=N the app says when its first frame is drawn
+    // and quits after N, for StartupBenchmark and StartupTraining
+    private int exitAfterFrames; // 0 to run until closed
+    private int framesRendered;
+
     @Override
     public void start(Stage primaryStage) {
+        String exitAfter = getParameters().getNamed().get("exit-after-frames");
+        if (exitAfter != null) {
+            exitAfterFrames = Math.max(1, Integer.parseInt(exitAfter));
+        }
+
         // Main map pane
         mapPane = new Pane();
         mapPane.setStyle("-fx-background-color: #1a1a1a;");
         mapPane.setPrefSize(800, 600);
+        mapPane.getChildren().addAll(frontRenderer.getView(), world);
+        world.getTransforms().add(worldTransform);
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(mapPane.widthProperty());
+        clip.heightProperty().bind(mapPane.heightProperty());
+        mapPane.setClip(clip);
+        mapPane.widthProperty().addListener((obs, old, val) -> setViewport(viewport.resized(
+                (int) Math.ceil(val.doubleValue()), viewport.height)));
+        mapPane.heightProperty().addListener((obs, old, val) -> setViewport(viewport.resized(
+                viewport.width, (int) Math.ceil(val.doubleValue()))));
+        enablePanZoom();
+        setViewport(viewport);
+        // Setting up JMX and JFR takes most of a second; the first frame
+        // should not wait for it
+        Thread registration = new Thread(engine.getMetrics()::register, "metrics-registration");
+        registration.setDaemon(true);
+        registration.start();
+        engine.setFrontBudget(DEFAULT_FRONT_BUDGET);
 
         // Create some sample walls
         createSampleWalls();
@@ -68,18 +166,50 @@ public class WaveSimulation extends Application {
         AnimationTimer timer = new AnimationTimer() {
             @Override
             public void handle(long now) {
-                updateWaves();
-                renderWaves();
+                if (replay != null) {
+                    renderReplay(now);
+                    return;
+                }
+                // Physics runs in fixed steps on the worker, whatever the refresh
+                // rate; only draw when it has published something new
+                worker.requestFrame(now);
+                FrontSnapshot latest = worker.takeSnapshot();
+                if (latest != null) {
+                    snapshot = latest;
+                }
+                if (snapshot != null && (latest != null || viewportChanged)) {
+                    viewportChanged = false;
+                    long renderStart = System.nanoTime();
+                    renderWaves();
+                    engine.getMetrics().recordRender(System.nanoTime() - renderStart);
+                    frameRendered();
+                }
+                if (metricsLabel.isVisible() && now - lastMetricsRefresh > METRICS_REFRESH_NANOS) {
+                    lastMetricsRefresh = now;
+                    updateMetricsOverlay();
+                }
             }
         };
+        worker.start();
         timer.start();
 
         Scene scene = new Scene(root, 1000, 700);
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN), this::undo);
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN), this::redo);
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN,
+                KeyCombination.SHIFT_DOWN), this::redo);
         primaryStage.setTitle("Wave Simulation");
         primaryStage.setScene(scene);
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        // Finish the file so it gets its frame index
+        worker.submit(this::closeRecorder);
+        worker.close();
+    }
+
     private VBox createControls() {
         VBox controls = new VBox(15);
         controls.setStyle("-fx-padding: 20; -fx-background-color: #333;");
@@ -96,10 +226,84 @@ public class WaveSimulation extends Application {
         speedSlider.setShowTickLabels(true);
         speedSlider.setShowTickMarks(true);
         speedSlider.valueProperty().addListener((obs, old, val) -> {
-            waveSpeed = val.doubleValue();
-            speedLabel.setText(String.format("Wave Speed: %.1f", waveSpeed));
+            double speed = val.doubleValue();
+            worker.submit(() -> engine.setWaveSpeed(speed));
+            speedLabel.setText(String.format("Wave Speed: %.1f", speed));
         });
 
+        // Fast-forward: physics steps per real second, independent of the display
+        Label simSpeedLabel = new Label("Sim Speed: 1.0x");
+        simSpeedLabel.setStyle("-fx-text-fill: white;");
+        Slider simSpeedSlider = new Slider(0.25, 20, 1.0);
+        simSpeedSlider.setShowTickLabels(true);
+        simSpeedSlider.setShowTickMarks(true);
+        simSpeedSlider.valueProperty().addListener((obs, old, val) -> {
+            double speed = val.doubleValue();
+            worker.submit(() -> clock.setSpeed(speed));
+            simSpeedLabel.setText(String.format("Sim Speed: %.1fx", speed));
+        });
+
+        // Front budget in thousands; 0 lets the fronts grow without limit
+        Label budgetLabel = new Label(budgetText(DEFAULT_FRONT_BUDGET));
+        budgetLabel.setStyle("-fx-text-fill: white;");
+        Slider budgetSlider = new Slider(0, 500, DEFAULT_FRONT_BUDGET / 1000);
+        budgetSlider.setShowTickLabels(true);
+        budgetSlider.setShowTickMarks(true);
+        budgetSlider.setMajorTickUnit(100);
+        budgetSlider.valueProperty().addListener((obs, old, val) -> {
+            int budget = (int) Math.round(val.doubleValue()) * 1000;
+            worker.submit(() -> engine.setFrontBudget(budget));
+            budgetLabel.setText(budgetText(budget));
+        });
+
+        // Physics mode
+        Label modeLabel = new Label("Physics Mode:");
+        modeLabel.setStyle("-fx-text-fill: white; -fx-font-weight: bold;");
+        ComboBox<PhysicsMode> modeCombo = new ComboBox<>();
+        modeCombo.getItems().addAll(PhysicsMode.values());
+        modeCombo.setValue(engine.getMode());
+        modeCombo.setMaxWidth(Double.MAX_VALUE);
+        modeCombo.setOnAction(e -> {
+            PhysicsMode mode = modeCombo.getValue();
+            worker.submit(() -> engine.setMode(mode));
+        });
+
+        // Signal of the next sources placed
+        Label frequencyLabel = new Label("New Source Frequency: per emission");
+        frequencyLabel.setStyle("-fx-text-fill: white;");
+        sourceFrequencySlider = new Slider(0, 20, 0);
+        sourceFrequencySlider.setShowTickLabels(true);
+        sourceFrequencySlider.valueProperty().addListener((obs, old, val) -> frequencyLabel.setText(
+                val.doubleValue() == 0 ? "New Source Frequency: per emission"
+                        : String.format("New Source Frequency: %.1f Hz", val.doubleValue())));
+        Label phaseLabel = new Label("New Source Phase: 0°");
+        phaseLabel.setStyle("-fx-text-fill: white;");
+        sourcePhaseSlider = new Slider(0, 360, 0);
+        sourcePhaseSlider.setShowTickLabels(true);
+        sourcePhaseSlider.setMajorTickUnit(90);
+        sourcePhaseSlider.valueProperty().addListener((obs, old, val) ->
+                phaseLabel.setText(String.format("New Source Phase: %.0f°", val.doubleValue())));
+
+        // Accumulated coverage map under the fronts
+        Label heatmapLabel = new Label("Heatmap:");
+        heatmapLabel.setStyle("-fx-text-fill: white; -fx-font-weight: bold;");
+        ComboBox<HeatmapMode> heatmapCombo = new ComboBox<>();
+        heatmapCombo.getItems().addAll(HeatmapMode.values());
+        heatmapCombo.setValue(HeatmapMode.OFF);
+        heatmapCombo.setMaxWidth(Double.MAX_VALUE);
+        heatmapCombo.setOnAction(e -> {
+            HeatmapMode mode = heatmapCombo.getValue();
+            worker.submit(() -> engine.setHeatmapMode(mode));
+        });
+
+        Button clearHeatmapBtn = new Button("Clear Heatmap");
+        clearHeatmapBtn.setMaxWidth(Double.MAX_VALUE);
+        clearHeatmapBtn.setOnAction(e -> worker.submit(engine::clearHeatmap));
+
+        Button exportHeatmapBtn = new Button("Export Heatmap...");
+        exportHeatmapBtn.setMaxWidth(Double.MAX_VALUE);
+        exportHeatmapBtn.setOnAction(e -> exportHeatmap());
+
         // === NEW: Wall Type Selection ===
         Label wallTypeLabel = new Label("Wall Type:");
         wallTypeLabel.setStyle("-fx-text-fill: white; -fx-font-weight: bold;");
@@ -123,8 +327,19 @@ public class WaveSimulation extends Application {
         Label reflectValueLabel = new Label("Reflection: 0.5");
         reflectValueLabel.setStyle("-fx-text-fill: white;");
         reflectValueLabel.setVisible(false);
+
+        // Energy fractions: whatever is neither reflected nor transmitted is
+        // absorbed, so the two sliders never add up to more than 1
+        Label absorbValueLabel = new Label("Absorption: 0.00");
+        absorbValueLabel.setStyle("-fx-text-fill: white;");
+        absorbValueLabel.setVisible(false);
         customReflectionSlider.valueProperty().addListener((obs, old, val) -> {
             reflectValueLabel.setText(String.format("Reflection: %.2f", val.doubleValue()));
+            if (val.doubleValue() + customTransmissionSlider.getValue() > 1) {
+                customTransmissionSlider.setValue(1 - val.doubleValue());
+            }
+            absorbValueLabel.setText(String.format("Absorption: %.2f",
+                    Math.max(0, 1 - val.doubleValue() - customTransmissionSlider.getValue())));
         });
 
         customTransmissionSlider = new Slider(0, 1.0, 0.5);
@@ -137,6 +352,11 @@ public class WaveSimulation extends Application {
         transmitValueLabel.setVisible(false);
         customTransmissionSlider.valueProperty().addListener((obs, old, val) -> {
             transmitValueLabel.setText(String.format("Transmission: %.2f", val.doubleValue()));
+            if (val.doubleValue() + customReflectionSlider.getValue() > 1) {
+                customReflectionSlider.setValue(1 - val.doubleValue());
+            }
+            absorbValueLabel.setText(String.format("Absorption: %.2f",
+                    Math.max(0, 1 - val.doubleValue() - customReflectionSlider.getValue())));
         });
 
         // Show/hide custom controls based on selection
@@ -148,6 +368,7 @@ public class WaveSimulation extends Application {
             customTransmissionSlider.setVisible(isCustom);
             reflectValueLabel.setVisible(isCustom);
             transmitValueLabel.setVisible(isCustom);
+            absorbValueLabel.setVisible(isCustom);
         });
 
         // Wall mode toggle button (updated)
@@ -173,35 +394,93 @@ public class WaveSimulation extends Application {
         Button clearBtn = new Button("Clear All Waves");
         clearBtn.setMaxWidth(Double.MAX_VALUE);
         clearBtn.setOnAction(e -> {
-            waveFronts.clear();
-            Platform.runLater(() -> {
-                mapPane.getChildren()
-                        .removeIf(node -> node instanceof Circle && ((Circle) node).getFill() == Color.TRANSPARENT);
-            });
+            worker.submit(engine::clearFronts);
         });
 
+        // Pan and zoom
+        Button fitBtn = new Button("Fit View");
+        fitBtn.setMaxWidth(Double.MAX_VALUE);
+        fitBtn.setOnAction(e -> fitView());
+
         // Reset button
         Button resetBtn = new Button("Reset Simulation");
         resetBtn.setMaxWidth(Double.MAX_VALUE);
         resetBtn.setOnAction(e -> {
-            waveFronts.clear();
-            sources.clear();
-            walls.clear();
-            Platform.runLater(() -> {
-                mapPane.getChildren().clear();
-                createSampleWalls();
+            // Undoable like any other edit; the fronts and heatmap are not
+            // part of the scene and are simply dropped
+            SceneEdit edit = clearingEdit().addWalls(SampleScene.walls());
+            List<WaveSource> sources = SampleScene.sources();
+            Color[] colors = { Color.RED, Color.BLUE };
+            for (int i = 0; i < sources.size(); i++) {
+                WaveSource source = sources.get(i);
+                detachedDots.put(source, sourceDot(source, colors[i % colors.length]));
+                edit.addSource(source);
+            }
+            edit(edit);
+            worker.submit(() -> {
+                engine.clearFronts();
+                engine.clearHeatmap();
             });
         });
 
+        // Scene edit history
+        undoBtn = new Button("Undo");
+        undoBtn.setMaxWidth(Double.MAX_VALUE);
+        undoBtn.setOnAction(e -> undo());
+
+        redoBtn = new Button("Redo");
+        redoBtn.setMaxWidth(Double.MAX_VALUE);
+        redoBtn.setOnAction(e -> redo());
+        updateHistoryButtons();
+
+        // Scene files
+        Button loadBtn = new Button("Load Scene...");
+        loadBtn.setMaxWidth(Double.MAX_VALUE);
+        loadBtn.setOnAction(e -> loadScene());
+
+        Button saveBtn = new Button("Save Scene...");
+        saveBtn.setMaxWidth(Double.MAX_VALUE);
+        saveBtn.setOnAction(e -> saveScene());
+
+        // Recording and replay
+        recordBtn = new Button("Start Recording...");
+        recordBtn.setMaxWidth(Double.MAX_VALUE);
+        recordBtn.setOnAction(e -> toggleRecording());
+
+        Button replayBtn = new Button("Open Recording...");
+        replayBtn.setMaxWidth(Double.MAX_VALUE);
+        replayBtn.setOnAction(e -> openReplay());
+
+        replaySlider = new Slider(0, 1, 0);
+        replaySlider.setDisable(true);
+        replaySlider.valueProperty().addListener((obs, old, val) -> replayFrame = val.intValue());
+
+        Button liveBtn = new Button("Back to Live");
+        liveBtn.setMaxWidth(Double.MAX_VALUE);
+        liveBtn.setOnAction(e -> closeReplay());
+
+        // Performance overlay
+        CheckBox metricsToggle = new CheckBox("Show Metrics");
+        metricsToggle.setStyle("-fx-text-fill: white;");
+        metricsLabel = new Label();
+        metricsLabel.setStyle("-fx-text-fill: #9f9; -fx-font-family: monospace; -fx-font-size: 10;");
+        metricsLabel.setVisible(false);
+        metricsLabel.managedProperty().bind(metricsLabel.visibleProperty());
+        metricsToggle.setOnAction(e -> {
+            metricsLabel.setVisible(metricsToggle.isSelected());
+            // Percentiles cover the time the overlay has been open
+            engine.getMetrics().resetRenderTimes();
+            worker.submit(engine.getMetrics()::resetStepTimes);
+        });
+
         // Full reset button
         Button fullReset = new Button("Full Reset Everything");
         fullReset.setMaxWidth(Double.MAX_VALUE);
         fullReset.setOnAction(e -> {
-            waveFronts.clear();
-            sources.clear();
-            walls.clear();
-            Platform.runLater(() -> {
-                mapPane.getChildren().clear();
+            edit(clearingEdit());
+            worker.submit(() -> {
+                engine.clearFronts();
+                engine.clearHeatmap();
             });
         });
 
@@ -209,16 +488,38 @@ public class WaveSimulation extends Application {
                 title,
                 new Label(" "),
                 speedLabel, speedSlider,
+                simSpeedLabel, simSpeedSlider,
+                budgetLabel, budgetSlider,
+                modeLabel, modeCombo,
+                frequencyLabel, sourceFrequencySlider,
+                phaseLabel, sourcePhaseSlider,
+                heatmapLabel, heatmapCombo,
+                clearHeatmapBtn,
+                exportHeatmapBtn,
                 new Label(" "),
                 wallTypeLabel, wallTypeCombo,
                 customValuesLabel,
                 reflectValueLabel, customReflectionSlider,
                 transmitValueLabel, customTransmissionSlider,
+                absorbValueLabel,
                 new Label(" "),
                 wallModeBtn,
                 clearBtn,
+                fitBtn,
+                undoBtn,
+                redoBtn,
                 resetBtn,
-                fullReset);
+                fullReset,
+                new Label(" "),
+                loadBtn,
+                saveBtn,
+                recordBtn,
+                replayBtn,
+                replaySlider,
+                liveBtn,
+                new Label(" "),
+                metricsToggle,
+                metricsLabel);
 
         return controls;
     }
@@ -227,275 +528,603 @@ public class WaveSimulation extends Application {
         final double[] startPoint = new double[2];
 
         mapPane.setOnMousePressed(e -> {
-            startPoint[0] = e.getX();
-            startPoint[1] = e.getY();
+            startPoint[0] = viewport.toWorldX(e.getX());
+            startPoint[1] = viewport.toWorldY(e.getY());
         });
 
         mapPane.setOnMouseReleased(e -> {
+            if (e.getButton() != MouseButton.PRIMARY) {
+                return; // Panning
+            }
             WallType selectedType = wallTypeCombo.getValue();
+            double endX = viewport.toWorldX(e.getX()), endY = viewport.toWorldY(e.getY());
 
             if (selectedType == WallType.CUSTOM) {
                 // Use custom slider values
-                addWall(startPoint[0], startPoint[1], e.getX(), e.getY(),
+                addWall(startPoint[0], startPoint[1], endX, endY,
                         selectedType,
                         customReflectionSlider.getValue(),
                         customTransmissionSlider.getValue());
             } else {
                 // Use default values for the selected type
-                addWall(startPoint[0], startPoint[1], e.getX(), e.getY(), selectedType);
+                addWall(startPoint[0], startPoint[1], endX, endY, selectedType);
             }
         });
     }
 
     // Overloaded methods for adding walls
     private void addWall(double x1, double y1, double x2, double y2, WallType type) {
-        Wall wall = new Wall(x1, y1, x2, y2, type);
-        walls.add(wall);
-
-        // Visual representation with type-specific color
-        Line line = new Line(x1, y1, x2, y2);
-        line.setStroke(type.getColor());
-        line.setStrokeWidth(3);
-
-        // Add a label to show wall type (optional)
-        double midX = (x1 + x2) / 2;
-        double midY = (y1 + y2) / 2;
-        Label typeLabel = new Label(type.getDisplayName().substring(0, 1)); // First letter
+        addWall(new Wall(x1, y1, x2, y2, type));
+    }
+
+    private void addWall(double x1, double y1, double x2, double y2,
+            WallType type, double reflection, double transmission) {
+        addWall(new Wall(x1, y1, x2, y2, type, reflection, transmission));
+    }
+
+    private void addWall(Wall wall) {
+        edit(new SceneEdit().addWall(wall));
+    }
+
+    // Makes the edit and records it for undo
+    private void edit(SceneEdit edit) {
+        if (edit.isEmpty()) {
+            return;
+        }
+        history.record(edit);
+        apply(edit);
+    }
+
+    private void undo() {
+        SceneEdit edit = history.undo();
+        if (edit != null) {
+            apply(edit);
+        }
+    }
+
+    private void redo() {
+        SceneEdit edit = history.redo();
+        if (edit != null) {
+            apply(edit);
+        }
+    }
+
+    // Hands the edit to the engine and updates the nodes to match, each side
+    // in one batch
+    private void apply(SceneEdit edit) {
+        worker.submit(() -> engine.apply(edit));
+
+        if (!edit.removedWalls.isEmpty()) {
+            Set<Wall> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            removed.addAll(edit.removedWalls);
+            Set<Node> labels = new HashSet<>();
+            for (Wall wall : edit.removedWalls) {
+                Label label = wallNodes.remove(wall);
+                if (label != null) {
+                    labels.add(label);
+                }
+            }
+            world.getChildren().removeAll(labels);
+            frontRenderer.removeWalls(removed);
+        }
+        Set<Node> dots = new HashSet<>();
+        for (WaveSource source : edit.removedSources) {
+            Circle dot = sourceDots.remove(source);
+            if (dot != null) {
+                // Without its handlers the dot no longer holds on to the source
+                dot.setOnMousePressed(null);
+                dot.setOnMouseDragged(null);
+                dot.setOnMouseReleased(null);
+                detachedDots.put(source, dot);
+                dots.add(dot);
+            }
+        }
+        world.getChildren().removeAll(dots);
+        for (Wall wall : edit.addedWalls) {
+            addWallNode(wall);
+        }
+        for (WaveSource source : edit.addedSources) {
+            Circle dot = detachedDots.remove(source);
+            attachDot(source, dot != null ? dot : sourceDot(source, Color.GREEN));
+        }
+        for (SceneEdit.Move move : edit.moves) {
+            Circle dot = sourceDots.get(move.source);
+            if (dot != null) {
+                dot.setCenterX(move.toX);
+                dot.setCenterY(move.toY);
+            }
+        }
+        viewportChanged = true;
+        updateHistoryButtons();
+    }
+
+    // An edit removing every wall and source in the scene
+    private SceneEdit clearingEdit() {
+        return new SceneEdit().removeWalls(new ArrayList<>(wallNodes.keySet()))
+                .removeSources(new ArrayList<>(sourceDots.keySet()));
+    }
+
+    // Edits made before the scene was replaced cannot be undone on it
+    private void clearHistory() {
+        history.clear();
+        updateHistoryButtons();
+    }
+
+    private void updateHistoryButtons() {
+        undoBtn.setDisable(!history.canUndo());
+        redoBtn.setDisable(!history.canRedo());
+    }
+
+    private void addWallNode(Wall wall) {
+        // Drawn by the renderer in its type's colour, only when on screen
+        frontRenderer.addWall(wall);
+        viewportChanged = true;
+
+        double midX = (wall.x1 + wall.x2) / 2;
+        double midY = (wall.y1 + wall.y2) / 2;
+        if (wallNodes.size() >= MAX_LABELLED_WALLS) {
+            wallNodes.put(wall, null);
+            return;
+        }
+
+        Label typeLabel;
+        if (wall.type == WallType.CUSTOM) {
+            // Show custom values on wall
+            typeLabel = new Label(String.format("R:%.1f T:%.1f",
+                    wall.getReflectionCoeff(), wall.getTransmissionCoeff()));
+            typeLabel.setStyle("-fx-font-size: 8;");
+            typeLabel.setLayoutX(midX - 15);
+        } else {
+            // Add a label to show wall type (optional)
+            typeLabel = new Label(wall.type.getDisplayName().substring(0, 1)); // First letter
+            typeLabel.setStyle("-fx-font-size: 10; -fx-font-weight: bold;");
+            typeLabel.setLayoutX(midX - 5);
+        }
         typeLabel.setTextFill(Color.WHITE);
-        typeLabel.setStyle("-fx-font-size: 10; -fx-font-weight: bold;");
-        typeLabel.setLayoutX(midX - 5);
         typeLabel.setLayoutY(midY - 10);
+        world.getChildren().add(typeLabel);
+        wallNodes.put(wall, typeLabel);
+    }
 
-        Platform.runLater(() -> {
-            mapPane.getChildren().addAll(line, typeLabel);
+    private void createSampleWalls() {
+        worker.submit(() -> {
+            SampleScene.build(engine);
+            postSceneNodes();
         });
     }
 
-    private void addWall(double x1, double y1, double x2, double y2,
-            WallType type, double reflection, double transmission) {
-        Wall wall = new Wall(x1, y1, x2, y2, type, reflection, transmission);
-        walls.add(wall);
-
-        // Visual representation
-        Line line = new Line(x1, y1, x2, y2);
-        line.setStroke(type.getColor());
-        line.setStrokeWidth(3);
-
-        // Show custom values on wall
-        double midX = (x1 + x2) / 2;
-        double midY = (y1 + y2) / 2;
-        Label valueLabel = new Label(String.format("R:%.1f T:%.1f", reflection, transmission));
-        valueLabel.setTextFill(Color.WHITE);
-        valueLabel.setStyle("-fx-font-size: 8;");
-        valueLabel.setLayoutX(midX - 15);
-        valueLabel.setLayoutY(midY - 10);
-
+    // On the worker: hands what is now in the engine to the FX thread to draw
+    private void postSceneNodes() {
+        List<Wall> walls = List.copyOf(engine.getWalls());
+        List<WaveSource> sources = List.copyOf(engine.getSources());
         Platform.runLater(() -> {
-            mapPane.getChildren().addAll(line, valueLabel);
+            clearSceneNodes();
+            addSceneNodes(walls, sources);
         });
     }
 
-    private void createSampleWalls() {
-        // Create different types of walls
-        addWall(200, 100, 200, 500, WallType.SOLID); // Solid wall (white)
-        addWall(600, 100, 600, 500, WallType.GLASS); // Glass (light blue)
-        addWall(100, 300, 700, 300, WallType.WATER); // Water (cyan)
-        addWall(400, 200, 400, 400, WallType.MIRROR); // Mirror (yellow)
-        addWall(100, 500, 300, 300, WallType.ABSORBER); // Absorber (dark gray)
-
-        // Add a custom wall with specific values
-        addWall(500, 500, 700, 500, WallType.CUSTOM, 0.4, 0.6);
+    private void clearSceneNodes() {
+        world.getChildren().clear();
+        sourceDots.clear();
+        detachedDots.clear();
+        frontRenderer.clearWalls();
+        wallNodes.clear();
+        viewportChanged = true;
+    }
 
-        // Add some wave sources
-        addWaveSource(300, 250, Color.RED);
-        addWaveSource(500, 350, Color.BLUE);
+    private void setViewport(Viewport viewport) {
+        this.viewport = viewport;
+        double scale = viewport.scale;
+        worldTransform.setToTransform(scale, 0, -viewport.originX * scale, 0, scale, -viewport.originY * scale);
+        // Source dots keep their size on screen
+        for (Circle dot : sourceDots.values()) {
+            scaleDot(dot);
+        }
+        worker.setView(viewport);
+        viewportChanged = true;
     }
 
-    private void addWaveSource(double x, double y, Color color) {
-        WaveSource source = new WaveSource(x, y);
-        sources.add(source);
+    // Scroll to zoom around the cursor, drag with the right or middle button
+    // to pan. Added as handlers rather than set, so wall mode can keep its own.
+    private void enablePanZoom() {
+        mapPane.addEventHandler(ScrollEvent.SCROLL, e -> {
+            if (e.getDeltaY() != 0) {
+                setViewport(viewport.zoomed(e.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP, e.getX(), e.getY()));
+            }
+        });
+        mapPane.addEventHandler(MouseEvent.MOUSE_PRESSED, e -> {
+            panX = e.getX();
+            panY = e.getY();
+        });
+        mapPane.addEventHandler(MouseEvent.MOUSE_DRAGGED, e -> {
+            if (e.getButton() == MouseButton.SECONDARY || e.getButton() == MouseButton.MIDDLE) {
+                setViewport(viewport.panned(e.getX() - panX, e.getY() - panY));
+                panX = e.getX();
+                panY = e.getY();
+            }
+        });
+    }
 
-        // Visual dot
-        Circle dot = new Circle(x, y, 8);
-        dot.setFill(color);
-        dot.setStroke(Color.WHITE);
-        dot.setStrokeWidth(2);
+    // Zooms to the walls, or the default map area when there are none
+    private void fitView() {
+        double[] bounds = frontRenderer.wallBounds();
+        if (bounds == null) {
+            bounds = new double[] { 0, 0, 800, 600 };
+        }
+        setViewport(viewport.fitted(bounds[0], bounds[1], bounds[2], bounds[3]));
+    }
 
-        // Make draggable
-        makeDraggable(dot, source);
+    // Nodes for the given walls and sources, with sources coloured alternately
+    private void addSceneNodes(List<Wall> walls, List<WaveSource> sources) {
+        for (Wall wall : walls) {
+            addWallNode(wall);
+        }
+        Color[] colors = { Color.RED, Color.BLUE };
+        for (int i = 0; i < sources.size(); i++) {
+            addSourceNode(sources.get(i), colors[i % colors.length]);
+        }
+    }
 
-        Platform.runLater(() -> mapPane.getChildren().add(dot));
+    private void loadScene() {
+        File file = sceneChooser("Load Scene").showOpenDialog(mapPane.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        // Read on the worker: a large plan takes a while, and the engine is
+        // only replaced once the whole file has been read
+        worker.submit(() -> {
+            try {
+                SceneFile.load(file.toPath(), engine);
+            } catch (IOException ex) {
+                // The scene is unchanged, and so is what can be undone on it
+                showError("Could not load scene: " + ex.getMessage());
+                return;
+            }
+            postSceneNodes();
+            Platform.runLater(() -> {
+                clearHistory();
+                fitView(); // After the walls are in the renderer
+            });
+        });
     }
 
-    private void makeDraggable(Circle dot, WaveSource source) {
-        final double[] dragDelta = new double[2];
+    private void saveScene() {
+        File file = sceneChooser("Save Scene").showSaveDialog(mapPane.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        worker.submit(() -> {
+            try {
+                SceneFile.save(file.toPath(), engine);
+            } catch (IOException ex) {
+                showError("Could not save scene: " + ex.getMessage());
+            }
+        });
+    }
 
-        dot.setOnMousePressed(e -> {
-            dragDelta[0] = dot.getCenterX() - e.getX();
-            dragDelta[1] = dot.getCenterY() - e.getY();
+    private void exportHeatmap() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Export Heatmap");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV", "*.csv"));
+        File file = chooser.showSaveDialog(mapPane.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        worker.submit(() -> {
+            try {
+                engine.exportHeatmap(file.toPath());
+            } catch (IOException ex) {
+                showError("Could not export heatmap: " + ex.getMessage());
+            }
         });
+    }
 
-        dot.setOnMouseDragged(e -> {
-            dot.setCenterX(e.getX() + dragDelta[0]);
-            dot.setCenterY(e.getY() + dragDelta[1]);
-            source.x = dot.getCenterX();
-            source.y = dot.getCenterY();
+    private void toggleRecording() {
+        if (recording) {
+            stopRecording();
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Record To");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Recording", "*.wrec"));
+        File file = chooser.showSaveDialog(mapPane.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        recording = true;
+        recordBtn.setText("Stop Recording");
+        worker.submit(() -> {
+            try {
+                recorder = new Recorder(file.toPath(), engine);
+            } catch (IOException ex) {
+                Platform.runLater(() -> {
+                    recording = false;
+                    recordBtn.setText("Start Recording...");
+                });
+                showError("Could not start recording: " + ex.getMessage());
+                return;
+            }
+            clock.setRecorder(recorder);
         });
     }
 
-    private void handleMapClick(javafx.scene.input.MouseEvent e) {
-        if (!wallDrawingMode) {
-            addWaveSource(e.getX(), e.getY(), Color.GREEN);
+    private void stopRecording() {
+        recording = false;
+        recordBtn.setText("Start Recording...");
+        worker.submit(this::closeRecorder);
+    }
+
+    // On the worker: detaches the recorder and writes out the rest of the file
+    private void closeRecorder() {
+        if (recorder == null) {
+            return;
+        }
+        clock.setRecorder(null);
+        try {
+            recorder.close();
+        } catch (IOException ex) {
+            showError("Recording failed: " + ex.getMessage());
+        } finally {
+            recorder = null;
         }
     }
 
-    private void updateWaves() {
-        // Create new wave fronts from sources
-        for (WaveSource source : sources) {
-            source.frameCounter++;
-            if (source.frameCounter >= source.emitRate) {
-                source.frameCounter = 0;
+    // Safe from any thread
+    private static void showError(String message) {
+        Platform.runLater(() -> new Alert(Alert.AlertType.ERROR, message).show());
+    }
 
-                // Emit waves in multiple directions for more realistic effect
-                // was this: for (int i = 0; i < 36; i++) {
-                for (int i = 0; i < 72; i++) {
-                    double angle = (i * 5) * Math.PI / 180; // was: double angle = (i * 10) * Math.PI / 180;
-                    // Directly add to concurrent queue - safe!
-                    waveFronts.add(new WaveFront(
-                            source.x, source.y, angle, 1.0, 0));
+    private void openReplay() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Open Recording");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Recording", "*.wrec"));
+        File file = chooser.showOpenDialog(mapPane.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        if (recording) {
+            stopRecording();
+        }
+        Recording opened;
+        try {
+            opened = new Recording(file.toPath());
+        } catch (IOException ex) {
+            new Alert(Alert.AlertType.ERROR, "Could not open recording: " + ex.getMessage()).showAndWait();
+            return;
+        }
+        worker.submit(() -> {
+            try {
+                // Show the recorded walls and sources; they stay when going back to live
+                opened.loadScene(engine);
+            } catch (IOException ex) {
+                try {
+                    opened.close();
+                } catch (IOException ignored) {
+                    // Already failing
                 }
+                showError("Could not open recording: " + ex.getMessage());
+                return;
             }
+            postSceneNodes();
+            Platform.runLater(() -> {
+                clearHistory();
+                startReplay(opened);
+            });
+        });
+    }
+
+    private void startReplay(Recording recording) {
+        closeReplay();
+        replay = recording;
+        replayFrame = 0;
+        shownFrame = -1;
+        replaySlider.setMax(Math.max(1, replay.frameCount() - 1));
+        replaySlider.setValue(0);
+        replaySlider.setDisable(false);
+    }
+
+    private void closeReplay() {
+        if (replay == null) {
+            return;
         }
+        try {
+            replay.close();
+        } catch (IOException ex) {
+            // Nothing was written, so there is nothing to lose
+        }
+        replay = null;
+        replaySlider.setDisable(true);
+        worker.submit(clock::reset);
+    }
 
-        // Clear removal list
-        wavesToRemove.clear();
-
-        // Update existing wave fronts
-        for (WaveFront wave : waveFronts) {
-            // Store previous position for collision detection
-            double prevX = wave.x;
-            double prevY = wave.y;
-
-            // Move wave
-            double dx = Math.cos(wave.angle) * waveSpeed;
-            double dy = Math.sin(wave.angle) * waveSpeed;
-            wave.x += dx;
-            wave.y += dy;
-            wave.age++;
-            wave.amplitude *= 0.99; // Natural decay
-
-            // Check wall collisions
-            boolean collided = false;
-            for (Wall wall : walls) {
-                if (checkCollision(prevX, prevY, wave.x, wave.y, wall)) {
-                    // Handle collision - this will ADD new waves to the queue
-                    handleCollision(wave, wall);
-                    collided = true;
-                    break;
+    // Plays the replay at the pace it was recorded at: shows the last frame
+    // recorded at or before the replay clock, whatever the refresh rate. The
+    // clock holds while the slider is dragged and goes on from where it is
+    // let go. Frames are only decoded and drawn when there is a new one.
+    private void renderReplay(long now) {
+        int count = replay.frameCount();
+        if (count == 0) {
+            return;
+        }
+        int frame = Math.min(replayFrame, count - 1);
+        try {
+            if (frame != shownFrame) {
+                // Just opened, or moved with the slider
+                replaySnapshot = replay.read(frame, replaySnapshot);
+                aheadDecoded = false;
+                shownFrame = frame;
+                anchorReplayClock(now);
+            } else if (replaySlider.isValueChanging() || frame == count - 1) {
+                anchorReplayClock(now);
+                if (!viewportChanged) {
+                    return;
+                }
+            } else {
+                double replayTime = replayAnchorTime + (now - replayAnchorNanos) / 1e9;
+                while (frame < count - 1) {
+                    if (!aheadDecoded) {
+                        replayAhead = replay.read(frame + 1, replayAhead);
+                        aheadDecoded = true;
+                    }
+                    if (replayAhead.time > replayTime) {
+                        break;
+                    }
+                    FrontSnapshot shown = replaySnapshot;
+                    replaySnapshot = replayAhead;
+                    replayAhead = shown;
+                    aheadDecoded = false;
+                    frame++;
                 }
+                if (frame == shownFrame && !viewportChanged) {
+                    return;
+                }
+                shownFrame = frame;
+                replaySlider.setValue(frame);
             }
+        } catch (IOException ex) {
+            closeReplay();
+            new Alert(Alert.AlertType.ERROR, "Replay failed: " + ex.getMessage()).show();
+            return;
+        }
+        viewportChanged = false;
+        frontRenderer.render(replaySnapshot, viewport);
+    }
 
-            // Mark for removal if collided or too old
-            if (collided || wave.age > 200 || wave.amplitude < 0.05) {
-                wavesToRemove.add(wave);
-            }
+    private void anchorReplayClock(long now) {
+        replayAnchorTime = replaySnapshot.time;
+        replayAnchorNanos = now;
+    }
+
+    private void updateMetricsOverlay() {
+        EngineMetrics m = engine.getMetrics();
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("step  p50 %7.0f  p99 %7.0f us%n", m.getStepP50Micros(), m.getStepP99Micros()));
+        text.append(String.format("      max %7.0f us%n", m.getStepMaxMicros()));
+        text.append(String.format("draw  p50 %7.0f  p99 %7.0f us%n", m.getRenderP50Micros(), m.getRenderP99Micros()));
+        for (int p = 0; p < EngineMetrics.PHASES.length; p++) {
+            text.append(String.format("  %-13s %8.0f us%n", EngineMetrics.PHASES[p], m.getPhaseNanos(p) / 1e3));
+        }
+        text.append(String.format("fronts %d (+%d emitted +%d spawned -%d)%n", m.getLiveFronts(),
+                m.getEmittedPerStep(), m.getSpawnedPerStep(), m.getRemovedPerStep()));
+        if (m.getMergedPerStep() + m.getCulledPerStep() > 0) {
+            text.append(String.format("budget -%d merged -%d culled%n", m.getMergedPerStep(), m.getCulledPerStep()));
+        }
+        if (m.getPrunedFaintPerStep() + m.getPrunedOutsidePerStep() > 0) {
+            text.append(String.format("pruned %d faint %d outside%n",
+                    m.getPrunedFaintPerStep(), m.getPrunedOutsidePerStep()));
+        }
+        text.append("by gen");
+        for (int count : m.getLiveFrontsByGeneration()) {
+            text.append(' ').append(count);
         }
+        text.append(String.format("%nhits/step"));
+        for (WallType type : WallType.values()) {
+            text.append(String.format(" %s:%d", type.getDisplayName().substring(0, 1), m.getCollisions(type)));
+        }
+        text.append(String.format("%nalloc %.1f KB/step, %d dropped steps",
+                m.getAllocatedBytesPerStep() / 1024.0, clock.getDroppedSteps()));
+        metricsLabel.setText(text.toString());
+    }
 
-        // Remove all marked waves
-        waveFronts.removeAll(wavesToRemove);
+    private static String budgetText(int budget) {
+        return budget == 0 ? "Front Budget: off" : String.format("Front Budget: %dk", budget / 1000);
     }
 
-    private boolean checkCollision(double x1, double y1, double x2, double y2, Wall wall) {
-        return lineIntersection(x1, y1, x2, y2,
-                wall.x1, wall.y1, wall.x2, wall.y2) != null;
+    private static FileChooser sceneChooser(String title) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle(title);
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Binary scene", "*.wscene"),
+                new FileChooser.ExtensionFilter("Text scene", "*.txt"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        return chooser;
     }
 
-    private double[] lineIntersection(double x1, double y1, double x2, double y2,
-            double x3, double y3, double x4, double y4) {
-        double denom = (x1 - x2) * (y3 - y4) - (y1 - y2) * (x3 - x4);
-        if (denom == 0)
-            return null;
+    private void addWaveSource(double x, double y, Color color) {
+        WaveSource source = new WaveSource(x, y);
+        source.frequency = sourceFrequencySlider.getValue();
+        source.phase = Math.toRadians(sourcePhaseSlider.getValue());
+        detachedDots.put(source, sourceDot(source, color));
+        edit(new SceneEdit().addSource(source));
+    }
 
-        double t = ((x1 - x3) * (y3 - y4) - (y1 - y3) * (x3 - x4)) / denom;
-        double u = -((x1 - x2) * (y1 - y3) - (y1 - y2) * (x1 - x3)) / denom;
+    private void addSourceNode(WaveSource source, Color color) {
+        attachDot(source, sourceDot(source, color));
+    }
 
-        if (t >= 0 && t <= 1 && u >= 0 && u <= 1) {
-            return new double[] { x1 + t * (x2 - x1), y1 + t * (y2 - y1) };
-        }
-        return null;
+    private Circle sourceDot(WaveSource source, Color color) {
+        // Visual dot; the source's position is only read before the worker has it
+        Circle dot = new Circle(source.x, source.y, SOURCE_RADIUS / viewport.scale);
+        dot.setFill(color);
+        dot.setStroke(Color.WHITE);
+        dot.setStrokeWidth(2 / viewport.scale);
+        return dot;
     }
 
-    private void handleCollision(WaveFront wave, Wall wall) {
-        // Calculate direction vector
-        double dx = Math.cos(wave.angle);
-        double dy = Math.sin(wave.angle);
+    private void attachDot(WaveSource source, Circle dot) {
+        scaleDot(dot);
+        // Make draggable; the dot sits in the world group, so its local
+        // coordinates are world coordinates
+        makeDraggable(dot, source);
+        sourceDots.put(source, dot);
+        world.getChildren().add(dot);
+    }
 
-        // Calculate reflection angle
-        double nx = wall.normalX;
-        double ny = wall.normalY;
+    private void scaleDot(Circle dot) {
+        dot.setRadius(SOURCE_RADIUS / viewport.scale);
+        dot.setStrokeWidth(2 / viewport.scale);
+    }
 
-        // Dot product
-        double dot = dx * nx + dy * ny;
+    private void makeDraggable(Circle dot, WaveSource source) {
+        final double[] dragDelta = new double[2];
+        final double[] dragStart = new double[2];
 
-        // Reflection vector: R = V - 2*(V·N)*N
-        double reflectX = dx - 2 * dot * nx;
-        double reflectY = dy - 2 * dot * ny;
-        double reflectAngle = Math.atan2(reflectY, reflectX);
+        dot.setOnMousePressed(e -> {
+            dragDelta[0] = dot.getCenterX() - e.getX();
+            dragDelta[1] = dot.getCenterY() - e.getY();
+            dragStart[0] = dot.getCenterX();
+            dragStart[1] = dot.getCenterY();
+        });
 
-        // Use wall-specific coefficients!
-        double wallReflection = wall.getReflectionCoeff();
-        double wallTransmission = wall.getTransmissionCoeff();
+        // The source follows the drag live; the history gets one move for it
+        dot.setOnMouseDragged(e -> {
+            dot.setCenterX(e.getX() + dragDelta[0]);
+            dot.setCenterY(e.getY() + dragDelta[1]);
+            double x = dot.getCenterX(), y = dot.getCenterY();
+            worker.submit(() -> engine.moveSource(source, x, y));
+        });
 
-        // Create reflected wave
-        if (wallReflection > 0 && wave.generation < 3) {
-            waveFronts.add(new WaveFront(
-                    wave.x, wave.y,
-                    reflectAngle,
-                    wave.amplitude * wallReflection,
-                    wave.generation + 1));
-        }
+        dot.setOnMouseReleased(e -> {
+            double x = dot.getCenterX(), y = dot.getCenterY();
+            if (x != dragStart[0] || y != dragStart[1]) {
+                history.record(new SceneEdit().moveSource(source, dragStart[0], dragStart[1], x, y));
+                updateHistoryButtons();
+            }
+        });
+    }
 
-        // Create transmitted wave
-        if (wallTransmission > 0) {
-            waveFronts.add(new WaveFront(
-                    wave.x, wave.y,
-                    wave.angle,
-                    wave.amplitude * wallTransmission,
-                    wave.generation + 1));
+    private void handleMapClick(MouseEvent e) {
+        if (!wallDrawingMode && e.getButton() == MouseButton.PRIMARY && e.isStillSincePress()) {
+            addWaveSource(viewport.toWorldX(e.getX()), viewport.toWorldY(e.getY()), Color.GREEN);
         }
     }
 
     private void renderWaves() {
-        // This runs on the animation thread, so we need Platform.runLater for UI
-        // updates
-        Platform.runLater(() -> {
-            // Remove old wave circles
-            mapPane.getChildren()
-                    .removeIf(node -> node instanceof Circle && ((Circle) node).getFill() == Color.TRANSPARENT);
-
-            // Draw current wave fronts
-            for (WaveFront wave : waveFronts) {
-                Circle circle = new Circle(wave.x, wave.y, 3);
-                circle.setFill(Color.TRANSPARENT);
-
-                // Color based on amplitude and generation
-                Color color = Color.CYAN.deriveColor(
-                        0, 1, 1,
-                        Math.min(1, wave.amplitude));
-
-                if (wave.generation == 1)
-                    color = Color.YELLOW.deriveColor(0, 1, 1, wave.amplitude);
-                if (wave.generation == 2)
-                    color = Color.ORANGE.deriveColor(0, 1, 1, wave.amplitude);
-                if (wave.generation >= 3)
-                    color = Color.RED.deriveColor(0, 1, 1, wave.amplitude);
-
-                circle.setStroke(color);
-                circle.setStrokeWidth(1.5);
-
-                mapPane.getChildren().add(circle);
-            }
-        });
+        // Draw all fronts in one pass into the image under the wall and source nodes
+        frontRenderer.render(snapshot, viewport);
+    }
+
+    private void frameRendered() {
+        if (exitAfterFrames == 0) {
+            return;
+        }
+        if (++framesRendered == 1) {
+            // StartupBenchmark times the process up to this line
+            System.out.println("first frame drawn");
+        }
+        if (framesRendered == exitAfterFrames) {
+            Platform.exit();
+        }
     }
 
     /*
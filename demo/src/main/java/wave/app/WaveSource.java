@@ -2,11 +2,32 @@ package wave.app;
 
 public class WaveSource {
         double x, y;
-        int emitRate = 5; // Emit wave every 5 frames
-        int frameCounter = 0;
+        int emitRate = 5; // Emit wave every 5 reference frames
+        double emitClock = 0; // Reference frames since the last emission
+        int rays = WaveEngine.RAYS_PER_EMISSION; // Lowered by the front budget under load
+        double frequency = 0; // Hz of the emitted signal; 0 for one cycle per emission
+        double phase = 0; // Radians at time 0
         
         WaveSource(double x, double y) {
             this.x = x;
             this.y = y;
         }
+
+        // Same position and signal, not yet emitting, e.g. for another run of a scene
+        WaveSource copy() {
+            WaveSource copy = new WaveSource(x, y);
+            copy.emitRate = emitRate;
+            copy.frequency = frequency;
+            copy.phase = phase;
+            return copy;
+        }
+
+        // Phase of the emitted signal at the given time, in radians
+        double phaseAt(double time) {
+            if (frequency > 0) {
+                return 2 * Math.PI * frequency * time + phase;
+            }
+            double period = emitRate * WaveEngine.REFERENCE_DT;
+            return 2 * Math.PI * time / period + phase;
+        }
     }
\ No newline at end of file